@@ -0,0 +1,141 @@
+package com.datapipe.jenkins.vault;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bettercloud.vault.Vault;
+import com.bettercloud.vault.VaultException;
+import com.bettercloud.vault.response.LogicalResponse;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.credentials.VaultTokenCache;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import com.datapipe.jenkins.vault.model.VaultSecretValue;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * What {@link VaultBuildWrapper#setUp} does against Vault - log in and read all paths - measured against an
+ * in-process stub Vault server that answers with a configurable delay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VaultAccessorBenchmark {
+    private static final byte[] LOGIN_RESPONSE = ("{\"auth\":{\"client_token\":\"benchmark-token\","
+            + "\"lease_duration\":3600,\"renewable\":true,\"policies\":[\"default\"]}}").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SECRET_RESPONSE = ("{\"lease_id\":\"\",\"renewable\":false,\"lease_duration\":0,"
+            + "\"data\":{\"key\":\"value\"}}").getBytes(StandardCharsets.UTF_8);
+
+    @Param({"1", "15", "30"})
+    public int paths;
+
+    @Param({"0", "5"})
+    public int latencyMillis;
+
+    @Param({"true", "false"})
+    public boolean cachedToken;
+
+    private HttpServer server;
+    private String url;
+    private VaultCredential credential;
+    private List<VaultSecret> secrets;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/auth/approle/login", new StubHandler(LOGIN_RESPONSE));
+        server.createContext("/v1/secret/", new StubHandler(SECRET_RESPONSE));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        credential = new StubAppRoleCredential();
+        secrets = new ArrayList<>();
+        for (int i = 0; i < paths; i++) {
+            secrets.add(new VaultSecret("secret/path" + i, Collections.singletonList(new VaultSecretValue("VAR" + i, "key"))));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public List<LogicalResponse> authenticateAndRead() throws InterruptedException {
+        if (!cachedToken) {
+            VaultTokenCache.get().invalidateAll();
+        }
+        VaultAccessor accessor = new VaultAccessor();
+        accessor.init(url);
+        accessor.auth(credential);
+        return VaultSecretReader.readAll(accessor, secrets);
+    }
+
+    private final class StubHandler implements HttpHandler {
+        private final byte[] response;
+
+        StubHandler(byte[] response) {
+            this.response = response;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response);
+            }
+        }
+    }
+
+    private static final class StubAppRoleCredential extends BaseStandardCredentials implements VaultCredential {
+        StubAppRoleCredential() {
+            super(CredentialsScope.GLOBAL, "benchmark", "benchmark");
+        }
+
+        @Override
+        public VaultAuthToken authenticate(Vault vault) {
+            try {
+                return VaultAuthToken.fromAuthResponse(vault.auth().loginByAppRole("approle", "role-id", "secret-id"));
+            } catch (VaultException e) {
+                throw new VaultPluginException("could not log in into vault", e);
+            }
+        }
+    }
+}
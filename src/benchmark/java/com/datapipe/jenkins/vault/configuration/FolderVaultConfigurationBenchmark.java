@@ -0,0 +1,91 @@
+package com.datapipe.jenkins.vault.configuration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.cloudbees.hudson.plugins.folder.AbstractFolderProperty;
+import com.cloudbees.hudson.plugins.folder.AbstractFolderPropertyDescriptor;
+
+import hudson.model.Job;
+import hudson.util.DescribableList;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Resolution of the folder configuration for a job nested in a folder tree of the given depth, where every
+ * other folder carries a {@link FolderVaultConfiguration}, with and without {@link VaultConfigurationCache}.
+ * <p>
+ * A JMH fork runs without Jenkins, so the folders and the job are Mockito mocks. Each stubbed call costs more
+ * than the real getter would, so the uncached numbers are upper bounds; the relative gain of the cache is what
+ * matters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FolderVaultConfigurationBenchmark {
+    @Param({"1", "5", "20"})
+    public int depth;
+
+    private Job<?, ?> job;
+    private FolderVaultConfiguration.ForJob resolver;
+    private List<VaultConfigResolver> resolvers;
+    private VaultConfigurationCache cache;
+
+    @Setup
+    public void setUp() {
+        AbstractFolder<?> parent = null;
+        for (int level = 0; level < depth; level++) {
+            FolderVaultConfiguration property = null;
+            if (level % 2 == 0) {
+                VaultConfiguration configuration = new VaultConfiguration();
+                configuration.setVaultUrl(level == 0 ? "http://vault-" + level : null);
+                configuration.setVaultCredentialId("credential-" + level);
+                property = new FolderVaultConfiguration(configuration);
+            }
+            parent = folder(parent, property);
+        }
+        job = mock(Job.class);
+        when(job.getParent()).thenReturn(parent);
+        resolver = new FolderVaultConfiguration.ForJob();
+        resolvers = Collections.<VaultConfigResolver>singletonList(resolver);
+        cache = new VaultConfigurationCache();
+    }
+
+    @Benchmark
+    public VaultConfiguration forJob() {
+        return resolver.forJob(job);
+    }
+
+    @Benchmark
+    public VaultConfiguration cachedForJob() {
+        return cache.resolve(job, resolvers);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AbstractFolder<?> folder(AbstractFolder<?> parent, FolderVaultConfiguration property) {
+        DescribableList<AbstractFolderProperty<?>, AbstractFolderPropertyDescriptor> properties = mock(DescribableList.class);
+        when(properties.get(FolderVaultConfiguration.class)).thenReturn(property);
+        AbstractFolder<?> folder = mock(AbstractFolder.class);
+        when(folder.getParent()).thenReturn(parent);
+        when(folder.getProperties()).thenReturn(properties);
+        return folder;
+    }
+}
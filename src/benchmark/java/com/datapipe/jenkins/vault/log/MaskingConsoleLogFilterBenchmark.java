@@ -0,0 +1,95 @@
+package com.datapipe.jenkins.vault.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Console masking throughput in lines per second, depending on the number of secrets and the line length.
+ * One in a hundred lines contains a secret.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MaskingConsoleLogFilterBenchmark {
+    private static final int LINES = 1000;
+
+    @Param({"1", "10", "50"})
+    public int secretCount;
+
+    @Param({"80", "1000"})
+    public int lineLength;
+
+    private List<String> secrets;
+    private byte[][] lines;
+    private OutputStream maskingLogger;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        Random random = new Random(42);
+        secrets = new ArrayList<>();
+        for (int i = 0; i < secretCount; i++) {
+            secrets.add(randomString(random, 16 + random.nextInt(48)));
+        }
+        lines = new byte[LINES][];
+        for (int i = 0; i < LINES; i++) {
+            StringBuilder line = new StringBuilder(randomString(random, lineLength));
+            if (i % 100 == 0) {
+                line.replace(lineLength / 2, lineLength / 2, secrets.get(random.nextInt(secretCount)));
+            }
+            lines[i] = line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+        }
+        MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(), secrets);
+        maskingLogger = filter.decorateLogger(null, new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder b = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            b.append((char) (' ' + random.nextInt(95)));
+        }
+        return b.toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void maskLines() throws IOException {
+        for (byte[] line : lines) {
+            maskingLogger.write(line);
+        }
+    }
+
+    @Benchmark
+    public void patternStringForSecrets(Blackhole blackhole) {
+        blackhole.consume(MaskingConsoleLogFilter.getPatternStringForSecrets(secrets));
+    }
+}
@@ -0,0 +1,31 @@
+package com.datapipe.jenkins.vault;
+
+import java.nio.charset.StandardCharsets;
+
+import com.bettercloud.vault.json.JsonValue;
+import com.bettercloud.vault.response.LogicalResponse;
+import com.bettercloud.vault.rest.RestResponse;
+
+/**
+ * Responses built by the plugin rather than received from Vault, like the values of a version 2 key/value secret
+ * unwrapped from its data response, or a response served from the {@link VaultSecretCache}.
+ */
+final class LogicalResponses {
+    private LogicalResponses() {
+    }
+
+    /**
+     * @return a successful response with the given JSON body, parsed like one received from Vault
+     */
+    static LogicalResponse of(byte[] body) {
+        return new LogicalResponse(new RestResponse(200, "application/json", body), 0);
+    }
+
+    static LogicalResponse of(String body) {
+        return of(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static LogicalResponse of(JsonValue body) {
+        return of(body.toString());
+    }
+}
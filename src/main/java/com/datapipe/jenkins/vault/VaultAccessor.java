@@ -1,47 +1,424 @@
 package com.datapipe.jenkins.vault;
 
 import java.io.Serializable;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import com.bettercloud.vault.Vault;
 import com.bettercloud.vault.VaultConfig;
 import com.bettercloud.vault.VaultException;
+import com.bettercloud.vault.json.Json;
+import com.bettercloud.vault.json.JsonValue;
+import com.bettercloud.vault.json.ParseException;
 import com.bettercloud.vault.response.LogicalResponse;
 import com.bettercloud.vault.response.VaultResponse;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
 import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.credentials.VaultTokenCache;
 import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.metrics.VaultMetrics;
 
 public class VaultAccessor implements Serializable {
 	private static final long serialVersionUID = 1L;
 
+    private static final Logger LOGGER = Logger.getLogger(VaultAccessor.class.getName());
+
+    /** How often a failed read is retried, see {@link #read(String)} and {@link #readIdempotent(String)}. */
+    static final int MAX_RETRIES = Integer.getInteger(VaultAccessor.class.getName() + ".maxRetries", 3);
+
+    static final long INITIAL_BACKOFF_MILLIS = Long.getLong(VaultAccessor.class.getName() + ".initialBackoffMillis", 200);
+
+    static final long MAX_BACKOFF_MILLIS = Long.getLong(VaultAccessor.class.getName() + ".maxBackoffMillis", 5000);
+
+    /** How long a version of a key/value secret is cached; only bounded so destroyed versions are eventually dropped. */
+    static final long VERSION_CACHE_TTL_SECONDS = Long.getLong(VaultAccessor.class.getName() + ".versionCacheTtlSeconds", 3600);
+
 	private transient Vault vault;
 
     private transient VaultConfig config;
 
+    private transient VaultCredential credential;
+
+    private transient VaultAuthToken token;
+
     public void init(String url) {
         try {
-            config = new VaultConfig().address(url).build();
+            config = VaultClientFactory.newConfig(url);
             vault = new Vault(config);
         } catch (VaultException e) {
             throw new VaultPluginException("failed to connect to vault", e);
         }
     }
 
-    public void auth(VaultCredential vaultCredential) {
-        vault = vaultCredential.authorizeWithVault(vault, config);
+    /**
+     * Logs in once; the resulting token is reused for all subsequent calls and renewed when it nears its TTL.
+     * Tokens are shared with other builds using the same credential through the {@link VaultTokenCache}.
+     */
+    public synchronized void auth(VaultCredential vaultCredential) {
+        credential = vaultCredential;
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            loginThroughBreaker();
+            success = true;
+        } finally {
+            VaultMetrics.get().recordCall(VaultMetrics.AUTH, start, success);
+        }
+    }
+
+    private void loginThroughBreaker() {
+        VaultCircuitBreaker breaker = circuitBreaker();
+        breaker.acquire();
+        try {
+            login();
+            breaker.onSuccess();
+        } catch (RuntimeException e) {
+            VaultException cause = vaultExceptionCausing(e);
+            if (cause == null) {
+                breaker.release();
+            } else if (isRetryable(cause)) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Continues a session with a token obtained earlier instead of logging in. Without a credential, the token can
+     * only be renewed, not replaced.
+     */
+    public synchronized void useToken(VaultAuthToken authToken) {
+        token = authToken;
+        vault = new Vault(config.token(token.getToken()));
+    }
+
+    /**
+     * @return the token of the current session, {@code null} if not authenticated yet
+     */
+    public synchronized VaultAuthToken getToken() {
+        return token;
     }
 
+    /**
+     * Reads a path that may have side effects, like the credentials endpoint of a secrets engine issuing a new lease
+     * on every read. Retried with jittered exponential backoff only while the request never reached Vault: the
+     * connection was refused or could not be opened in time, or Vault rate limited it. A request that timed out or
+     * failed in Vault may still have been handled, and reading again could leak a lease.
+     */
     public LogicalResponse read(String path) {
+        return read(path, false);
+    }
+
+    /**
+     * Reads a path without side effects, like a key/value secret, its metadata or a listing. Retried with jittered
+     * exponential backoff while Vault is unavailable or rate limits.
+     */
+    public LogicalResponse readIdempotent(String path) {
+        return read(path, true);
+    }
+
+    private LogicalResponse read(String path, boolean idempotent) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            LogicalResponse response = readWithRetries(path, idempotent);
+            success = true;
+            return response;
+        } finally {
+            VaultMetrics.get().recordCall(VaultMetrics.READ, start, success);
+            VaultMetrics.get().counter(VaultMetrics.READ + ".mount." + VaultMetrics.mountOf(path) + (success ? ".success" : ".failure")).increment();
+        }
+    }
+
+    private LogicalResponse readWithRetries(String path, boolean idempotent) {
+        VaultCircuitBreaker breaker = circuitBreaker();
+        for (int attempt = 1; ; attempt++) {
+            breaker.acquire();
+            try {
+                LogicalResponse response = authorizedVault().logical().read(path);
+                breaker.onSuccess();
+                return response;
+            } catch (VaultException e) {
+                boolean retryable = isRetryable(e);
+                if (retryable) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+                if (!(idempotent ? retryable : isUnsent(e)) || attempt > MAX_RETRIES) {
+                    throw new VaultPluginException("could not read from vault: " + e.getMessage() + " at path: " + path, e);
+                }
+                LOGGER.log(Level.FINE, "could not read from vault at path " + path + ", retrying", e);
+                backOff(attempt);
+            } catch (RuntimeException e) {
+                breaker.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads a path whose values rarely change, serving them from the {@link VaultSecretCache} for up to the given
+     * number of seconds. Values that may be shared between builds cannot come from a read with side effects, so it is
+     * retried like {@link #readIdempotent(String)}.
+     */
+    public LogicalResponse read(String path, long cacheTtlSeconds) {
+        VaultAuthToken currentToken = getToken();
+        if (cacheTtlSeconds <= 0 || currentToken == null) {
+            return readIdempotent(path);
+        }
+        String url = config.getAddress();
+        LogicalResponse cached = VaultSecretCache.get().get(url, currentToken, path);
+        VaultMetrics.get().recordCacheLookup(VaultMetrics.SECRET_CACHE, cached != null);
+        if (cached != null) {
+            return cached;
+        }
+        LogicalResponse response = readIdempotent(path);
+        VaultSecretCache.get().put(url, currentToken, path, response, cacheTtlSeconds);
+        return response;
+    }
+
+    /**
+     * Lists the keys below a path; those of sub folders end with a {@code /}. Retried like
+     * {@link #readIdempotent(String)}.
+     *
+     * @return the keys, empty if there are none
+     */
+    public List<String> list(String path) {
+        String folder = path.endsWith("/") ? path : path + "/";
+        String keys;
+        try {
+            keys = readIdempotent(folder + "?list=true").getData().get("keys");
+        } catch (VaultPluginException e) {
+            VaultException cause = vaultExceptionCausing(e);
+            if (cause != null && cause.getHttpStatusCode() == 404) {
+                return Collections.emptyList();
+            }
+            throw e;
+        }
+        if (keys == null) {
+            return Collections.emptyList();
+        }
+        List<String> list = new ArrayList<>();
+        try {
+            for (JsonValue key : Json.parse(keys).asArray()) {
+                list.add(key.asString());
+            }
+        } catch (ParseException | UnsupportedOperationException e) {
+            throw new VaultPluginException("unexpected keys listed at path: " + path, e);
+        }
+        return list;
+    }
+
+    /**
+     * Reads a version of a secret of a version 2 key/value engine. Versions never change, so they are served from
+     * the {@link VaultSecretCache} once read; with version {@code 0}, only the metadata is read to find the current
+     * version, and the values are downloaded again only when there is a new one.
+     *
+     * @return a response holding the values of the secret, not nested below {@code data}
+     */
+    public LogicalResponse readKv2Version(String mount, String path, int version) {
+        if (version <= 0) {
+            String metadataPath = VaultKv2.metadataPath(mount, path);
+            version = VaultKv2.currentVersion(metadataPath, readIdempotent(metadataPath));
+        }
+        String dataPath = VaultKv2.dataPath(mount, path, version);
+        return VaultKv2.unwrap(dataPath, read(dataPath, VERSION_CACHE_TTL_SECONDS));
+    }
+
+    /**
+     * Reads a path through response wrapping, see {@link VaultResponseWrapping}.
+     *
+     * @return the single-use token wrapping the response, to be unwrapped on the agent
+     */
+    public String readWrapped(String path) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            String wrappingToken = wrapThroughBreaker(path);
+            success = true;
+            return wrappingToken;
+        } finally {
+            VaultMetrics.get().recordCall(VaultMetrics.READ, start, success);
+        }
+    }
+
+    private String wrapThroughBreaker(String path) {
+        VaultCircuitBreaker breaker = circuitBreaker();
+        breaker.acquire();
+        try {
+            authorizedVault();
+            VaultAuthToken currentToken = getToken();
+            if (currentToken == null) {
+                throw new VaultPluginException("could not read wrapped response from vault: not logged in");
+            }
+            String wrappingToken = VaultResponseWrapping.wrap(config, currentToken.getToken(), path);
+            breaker.onSuccess();
+            return wrappingToken;
+        } catch (VaultException e) {
+            if (isRetryable(e)) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            throw new VaultPluginException("could not read wrapped response from vault: " + e.getMessage() + " at path: " + path, e);
+        } catch (RuntimeException e) {
+            breaker.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Not retried here; {@link VaultLeaseManager} renews again before the lease runs out.
+     *
+     * @return the seconds the lease is valid for after renewal
+     */
+    public long renew(String leaseId, long incrementSeconds) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            long leaseDuration = renewThroughBreaker(leaseId, incrementSeconds);
+            success = true;
+            return leaseDuration;
+        } finally {
+            VaultMetrics.get().recordCall(VaultMetrics.RENEW, start, success);
+        }
+    }
+
+    private long renewThroughBreaker(String leaseId, long incrementSeconds) {
+        VaultCircuitBreaker breaker = circuitBreaker();
+        breaker.acquire();
         try {
-            return vault.logical().read(path);
+            VaultResponse response = authorizedVault().leases().renew(leaseId, incrementSeconds);
+            breaker.onSuccess();
+            return VaultLeaseManager.leaseDuration(response);
         } catch (VaultException e) {
-            throw new VaultPluginException("could not read from vault: " + e.getMessage() + " at path: " + path, e);
+            if (isRetryable(e)) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            throw new VaultPluginException("could not renew vault lease (" + leaseId + "):" + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            breaker.release();
+            throw e;
         }
     }
 
+    /**
+     * Not retried here; {@link VaultLeaseRevoker} retries failed revocations.
+     */
     public VaultResponse revoke(String leaseId) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            VaultResponse response = revokeThroughBreaker(leaseId);
+            success = true;
+            return response;
+        } finally {
+            VaultMetrics.get().recordCall(VaultMetrics.REVOKE, start, success);
+        }
+    }
+
+    private VaultResponse revokeThroughBreaker(String leaseId) {
+        VaultCircuitBreaker breaker = circuitBreaker();
+        breaker.acquire();
         try {
-            return vault.leases().revoke(leaseId);
+            VaultResponse response = authorizedVault().leases().revoke(leaseId);
+            breaker.onSuccess();
+            return response;
         } catch (VaultException e) {
-            throw new VaultPluginException("could not revoke vault lease (" + leaseId + "):" + e.getMessage());
+            if (isRetryable(e)) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            throw new VaultPluginException("could not revoke vault lease (" + leaseId + "):" + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            breaker.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return whether the failure means Vault is unavailable or rate limiting, rather than rejecting the request
+     */
+    static boolean isRetryable(VaultException e) {
+        int status = e.getHttpStatusCode();
+        // the driver reports connection failures and timeouts without a status
+        return status == 0 || status == 429 || status >= 500;
+    }
+
+    /**
+     * @return whether the request was rate limited or never reached Vault, so it cannot have been handled
+     */
+    static boolean isUnsent(VaultException e) {
+        if (e.getHttpStatusCode() == 429) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException) {
+                return true;
+            }
+            // the driver sets both timeouts on the same connection; only the one of connect has this message
+            if (cause instanceof SocketTimeoutException && "connect timed out".equals(cause.getMessage())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static VaultException vaultExceptionCausing(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof VaultException) {
+                return (VaultException) cause;
+            }
+        }
+        return null;
+    }
+
+    private static void backOff(int attempt) {
+        long ceiling = Math.min(INITIAL_BACKOFF_MILLIS << Math.min(attempt - 1, 20), MAX_BACKOFF_MILLIS);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VaultPluginException("interrupted while waiting to retry reading from vault", e);
+        }
+    }
+
+    private VaultCircuitBreaker circuitBreaker() {
+        return VaultCircuitBreaker.forUrl(config.getAddress());
+    }
+
+    private void login() {
+        token = VaultTokenCache.get().authenticate(config.getAddress(), credential, vault, config);
+        vault = new Vault(config.token(token.getToken()));
+    }
+
+    private synchronized Vault authorizedVault() {
+        if (token != null && token.isNearExpiry()) {
+            if (token.isRenewable() && !token.isExpired()) {
+                try {
+                    token = token.renewedBy(vault.auth().renewSelf());
+                    return vault;
+                } catch (VaultException e) {
+                    LOGGER.log(Level.FINE, "could not renew vault token, logging in again", e);
+                }
+            }
+            if (credential != null) {
+                login();
+            }
         }
+        return vault;
     }
 }
@@ -26,7 +26,6 @@ package com.datapipe.jenkins.vault;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -40,31 +39,26 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
 import com.bettercloud.vault.VaultException;
-import com.cloudbees.plugins.credentials.CredentialsMatchers;
-import com.cloudbees.plugins.credentials.CredentialsProvider;
-import com.cloudbees.plugins.credentials.CredentialsUnavailableException;
-import com.cloudbees.plugins.credentials.domains.DomainRequirement;
-import com.cloudbees.plugins.credentials.matchers.IdMatcher;
-import com.datapipe.jenkins.vault.configuration.VaultConfigResolver;
 import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.configuration.VaultConfigurationCache;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
 import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.credentials.VaultCredentialCache;
 import com.datapipe.jenkins.vault.exception.VaultPluginException;
 import com.datapipe.jenkins.vault.log.MaskingConsoleLogFilter;
 import com.datapipe.jenkins.vault.model.VaultSecret;
-import com.datapipe.jenkins.vault.model.VaultSecretValue;
 import com.google.common.annotations.VisibleForTesting;
 
 import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
-import hudson.ExtensionList;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.console.ConsoleLogFilter;
 import hudson.model.AbstractProject;
+import hudson.model.Item;
 import hudson.model.Run;
 import hudson.model.TaskListener;
-import hudson.security.ACL;
 import jenkins.tasks.SimpleBuildWrapper;
 
 public class VaultBuildWrapper extends SimpleBuildWrapper {
@@ -72,6 +66,7 @@ public class VaultBuildWrapper extends SimpleBuildWrapper {
     private List<VaultSecret> vaultSecrets;
     private List<String> valuesToMask = new ArrayList<>();
     private VaultAccessor vaultAccessor = new VaultAccessor();
+    private boolean prefetch;
 
     @DataBoundConstructor
     public VaultBuildWrapper(@CheckForNull List<VaultSecret> vaultSecrets) {
@@ -83,13 +78,50 @@ public class VaultBuildWrapper extends SimpleBuildWrapper {
                       Launcher launcher, TaskListener listener, EnvVars initialEnvironment)
             throws IOException, InterruptedException {
         PrintStream logger = listener.getLogger();
+        VaultTimingAction timing = VaultTimingAction.of(build);
+        long start = System.nanoTime();
         pullAndMergeConfiguration(build);
+        timing.record(VaultTimingAction.CONFIGURATION, start);
 
         // JENKINS-44163 - Build fails with a NullPointerException when no secrets are given for a job
         if (null != vaultSecrets && !vaultSecrets.isEmpty()) {
             try {
-                List<LogicalResponse> responses = provideEnvironmentVariablesFromVault(context, build);
-                context.setDisposer(new VaultDisposer(getConfiguration(), retrieveVaultCredentials(build), retrieveLeaseIds(responses)));
+                String url = getConfiguration().getVaultUrl();
+                if (StringUtils.isBlank(url)) {
+                    throw new VaultPluginException("The vault url was not configured - please specify the vault url to use.");
+                }
+                start = System.nanoTime();
+                VaultCredential credential = retrieveVaultCredentials(build);
+                timing.record(VaultTimingAction.CREDENTIALS, start);
+                start = System.nanoTime();
+                VaultSecretPrefetcher.Prefetched prefetched = takePrefetched(build, url, credential);
+                List<LogicalResponse> responses;
+                VaultAuthToken authToken;
+                if (prefetched != null) {
+                    timing.record(VaultTimingAction.PREFETCH_WAIT, start);
+                    responses = prefetched.getResponses();
+                    authToken = prefetched.getToken();
+                } else {
+                    responses = readFromVault(url, credential, timing);
+                    authToken = vaultAccessor.getToken();
+                    VaultLeaseManager.get().track(url, credential, authToken, responses);
+                }
+                List<LogicalResponse> unwrappedLeases = new ArrayList<>();
+                VaultSecretBindings bindings;
+                try {
+                    bindings = VaultSecretBindings.bind(url, vaultSecrets, responses, workspace, unwrappedLeases);
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    // no disposer is registered, so the leases would be renewed until their maximum TTL
+                    revoke(build, url, credential, leaseIds(responses, unwrappedLeases), authToken, timing);
+                    throw e;
+                }
+                VaultLeaseManager.get().track(url, credential, authToken, unwrappedLeases);
+                for (Map.Entry<String, String> variable : bindings.getEnv().entrySet()) {
+                    context.env(variable.getKey(), variable.getValue());
+                }
+                valuesToMask.addAll(bindings.getValuesToMask());
+                context.setDisposer(new VaultDisposer(getConfiguration(), credential, leaseIds(responses, unwrappedLeases), authToken,
+                        bindings.getFilesDir()));
             } catch (VaultException e) {
                 e.printStackTrace(logger);
                 throw new AbortException(e.getMessage());
@@ -111,12 +143,24 @@ public class VaultBuildWrapper extends SimpleBuildWrapper {
         return this.configuration;
     }
 
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Fetch the secrets while the build waits in the queue for an executor, see {@link VaultSecretPrefetcher}.
+     */
+    @DataBoundSetter
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
     @VisibleForTesting
     public void setVaultAccessor(VaultAccessor vaultAccessor) {
         this.vaultAccessor = vaultAccessor;
     }
 
-    private List<String> retrieveLeaseIds(List<LogicalResponse> logicalResponses) {
+    static List<String> retrieveLeaseIds(List<LogicalResponse> logicalResponses) {
         List<String> leaseIds = new ArrayList<>();
         for (LogicalResponse response : logicalResponses) {
             String leaseId = response.getLeaseId();
@@ -127,28 +171,35 @@ public class VaultBuildWrapper extends SimpleBuildWrapper {
         return leaseIds;
     }
 
-    private List<LogicalResponse> provideEnvironmentVariablesFromVault(Context context, Run build) throws VaultException {
-        String url = getConfiguration().getVaultUrl();
+    private static List<String> leaseIds(List<LogicalResponse> responses, List<LogicalResponse> unwrappedLeases) {
+        List<String> leaseIds = retrieveLeaseIds(responses);
+        leaseIds.addAll(retrieveLeaseIds(unwrappedLeases));
+        return leaseIds;
+    }
 
-        if (StringUtils.isBlank(url)) {
-            throw new VaultPluginException("The vault url was not configured - please specify the vault url to use.");
+    private static void revoke(Run<?, ?> build, String url, VaultCredential credential, List<String> leaseIds,
+                               @CheckForNull VaultAuthToken authToken, VaultTimingAction timing) {
+        if (!leaseIds.isEmpty()) {
+            VaultLeaseRevoker.get().revoke(url, credential.getId(), build.getParent().getFullName(), leaseIds, authToken, timing);
         }
+    }
 
-        VaultCredential credential = retrieveVaultCredentials(build);
+    @CheckForNull
+    private VaultSecretPrefetcher.Prefetched takePrefetched(Run<?, ?> build, String url, VaultCredential credential) throws InterruptedException {
+        if (!prefetch) {
+            return null;
+        }
+        VaultSecretPrefetcher prefetcher = VaultSecretPrefetcher.get();
+        return prefetcher == null ? null : prefetcher.take(build.getQueueId(), url, credential);
+    }
 
+    private List<LogicalResponse> readFromVault(String url, VaultCredential credential, VaultTimingAction timing) throws VaultException, InterruptedException {
+        long start = System.nanoTime();
         vaultAccessor.init(url);
-        ArrayList<LogicalResponse> responses = new ArrayList<>();
-        for (VaultSecret vaultSecret : vaultSecrets) {
-            vaultAccessor.auth(credential);
-            LogicalResponse response = vaultAccessor.read(vaultSecret.getPath());
-            responses.add(response);
-            Map<String, String> values = response.getData();
-            for (VaultSecretValue value : vaultSecret.getSecretValues()) {
-                valuesToMask.add(values.get(value.getVaultKey()));
-                context.env(value.getEnvVar(), values.get(value.getVaultKey()));
-            }
-        }
-        return responses;
+        vaultAccessor.auth(credential);
+        timing.record(VaultTimingAction.AUTH, start);
+        // paths are read concurrently, variables are still assigned in the order they are declared
+        return VaultSecretReader.readAll(vaultAccessor, vaultSecrets, timing);
     }
 
     private VaultCredential retrieveVaultCredentials(Run build) {
@@ -156,29 +207,25 @@ public class VaultBuildWrapper extends SimpleBuildWrapper {
         if (StringUtils.isBlank(id)) {
             throw new VaultPluginException("The credential id was not configured - please specify the credentials to use.");
         }
-        List<VaultCredential> credentials = CredentialsProvider.lookupCredentials(VaultCredential.class, build.getParent(), ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
-        VaultCredential credential = CredentialsMatchers.firstOrNull(credentials, new IdMatcher(id));
-
-        if (credential == null) {
-            throw new CredentialsUnavailableException(id);
-        }
-
-        return credential;
+        return VaultCredentialCache.get().lookup(build.getParent(), id);
     }
 
     private void pullAndMergeConfiguration(Run<?, ?> build) {
-        for (VaultConfigResolver resolver : ExtensionList.lookup(VaultConfigResolver.class)) {
-            if (configuration != null) {
-                configuration = configuration.mergeWithParent(resolver.forJob(build.getParent()));
-            } else {
-                configuration = resolver.forJob(build.getParent());
-            }
-        }
+        configuration = resolveConfiguration(build.getParent());
         if (configuration == null) {
             throw new VaultPluginException("No configuration found - please configure the VaultPlugin.");
         }
     }
 
+    /**
+     * @return the configuration of this wrapper merged with the one resolved for the given job
+     */
+    @CheckForNull
+    VaultConfiguration resolveConfiguration(Item job) {
+        VaultConfiguration resolved = VaultConfigurationCache.get().forJob(job);
+        return configuration != null ? configuration.mergeWithParent(resolved) : resolved;
+    }
+
     @Override
     public ConsoleLogFilter createLoggerDecorator(
             @Nonnull final Run<?, ?> build) {
@@ -0,0 +1,91 @@
+package com.datapipe.jenkins.vault;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+
+/**
+ * Stops calling a Vault server after a number of consecutive failures, so builds fail fast instead of each
+ * waiting for timeouts while the server is down.
+ * <p>
+ * Once open, calls are rejected for a while; then a single trial call is let through, whose outcome closes or
+ * reopens the breaker. Only failures that indicate an unavailable server count; a denied or missing secret
+ * shows the server is up.
+ */
+final class VaultCircuitBreaker {
+    static final int FAILURE_THRESHOLD = Integer.getInteger(VaultCircuitBreaker.class.getName() + ".failureThreshold", 5);
+
+    static final long OPEN_MILLIS = Long.getLong(VaultCircuitBreaker.class.getName() + ".openMillis", TimeUnit.SECONDS.toMillis(30));
+
+    private static final ConcurrentMap<String, VaultCircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final String url;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    VaultCircuitBreaker(String url, int failureThreshold, long openMillis) {
+        this.url = url;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    static VaultCircuitBreaker forUrl(String url) {
+        VaultCircuitBreaker breaker = BREAKERS.get(url);
+        if (breaker == null) {
+            VaultCircuitBreaker created = new VaultCircuitBreaker(url, FAILURE_THRESHOLD, OPEN_MILLIS);
+            breaker = BREAKERS.putIfAbsent(url, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Must be called before each call to Vault, followed by one of {@link #onSuccess()}, {@link #onFailure()} or
+     * {@link #release()}.
+     *
+     * @throws VaultPluginException if the breaker is open
+     */
+    synchronized void acquire() {
+        if (consecutiveFailures < failureThreshold) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now < openUntil || trialInFlight) {
+            throw new VaultPluginException("vault at " + url + " failed " + consecutiveFailures
+                    + " times in a row - not calling it until it recovers");
+        }
+        trialInFlight = true;
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (consecutiveFailures >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+    }
+
+    /**
+     * Ends a call whose outcome says nothing about the availability of Vault.
+     */
+    synchronized void release() {
+        trialInFlight = false;
+    }
+
+    synchronized boolean isOpen() {
+        return consecutiveFailures >= failureThreshold;
+    }
+}
@@ -0,0 +1,54 @@
+package com.datapipe.jenkins.vault;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.bettercloud.vault.SslConfig;
+import com.bettercloud.vault.VaultConfig;
+import com.bettercloud.vault.VaultException;
+
+/**
+ * Creates the configuration of every Vault client the plugin uses, so all traffic to a Vault server shares the
+ * same SSL setup and timeouts.
+ * <p>
+ * The driver talks to Vault through {@link java.net.HttpURLConnection}, whose connections the JDK keeps alive
+ * and pools per host; the pool size is set with the {@code http.maxConnections} system property. Building the
+ * {@link SslConfig} once per URL means a CA certificate configured through {@code VAULT_SSL_CERT} yields a single
+ * SSL context, whose session cache lets connections resume TLS sessions instead of doing a full handshake.
+ */
+public final class VaultClientFactory {
+    /** Seconds to wait for a connection to Vault. */
+    static final int OPEN_TIMEOUT = Integer.getInteger(VaultClientFactory.class.getName() + ".openTimeout", 10);
+
+    /** Seconds to wait for a response from Vault. */
+    static final int READ_TIMEOUT = Integer.getInteger(VaultClientFactory.class.getName() + ".readTimeout", 30);
+
+    private static final ConcurrentMap<String, SslConfig> SSL_CONFIGS = new ConcurrentHashMap<>();
+
+    private VaultClientFactory() {
+    }
+
+    /**
+     * @return a new configuration without a token for the given Vault URL
+     */
+    public static VaultConfig newConfig(String url) throws VaultException {
+        return new VaultConfig()
+                .address(url)
+                .sslConfig(sslConfig(url))
+                .openTimeout(OPEN_TIMEOUT)
+                .readTimeout(READ_TIMEOUT)
+                .build();
+    }
+
+    private static SslConfig sslConfig(String url) throws VaultException {
+        SslConfig sslConfig = SSL_CONFIGS.get(url);
+        if (sslConfig == null) {
+            SslConfig built = new SslConfig().build();
+            sslConfig = SSL_CONFIGS.putIfAbsent(url, built);
+            if (sslConfig == null) {
+                sslConfig = built;
+            }
+        }
+        return sslConfig;
+    }
+}
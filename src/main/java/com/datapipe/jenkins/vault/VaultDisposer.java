@@ -2,6 +2,7 @@ package com.datapipe.jenkins.vault;
 
 import com.bettercloud.vault.response.LogicalResponse;
 import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
 import com.datapipe.jenkins.vault.credentials.VaultCredential;
 import hudson.FilePath;
 import hudson.Launcher;
@@ -19,22 +20,45 @@ public class VaultDisposer extends SimpleBuildWrapper.Disposer {
     private final List<String> leaseIds;
     private final VaultConfiguration vaultConfiguration;
     private final VaultCredential vaultCredential;
+    /** The token of the session that read the secrets; never persisted, so it is gone after a restart. */
+    private final transient VaultAuthToken authToken;
+    /** Directory of the secret files on the agent, if any. */
+    private final String secretFilesDir;
 
     public VaultDisposer(final VaultConfiguration vaultConfiguration, final VaultCredential vaultCredential, final List<String> leaseIds) {
+        this(vaultConfiguration, vaultCredential, leaseIds, null);
+    }
+
+    public VaultDisposer(final VaultConfiguration vaultConfiguration, final VaultCredential vaultCredential, final List<String> leaseIds, final VaultAuthToken authToken) {
+        this(vaultConfiguration, vaultCredential, leaseIds, authToken, null);
+    }
+
+    public VaultDisposer(final VaultConfiguration vaultConfiguration, final VaultCredential vaultCredential, final List<String> leaseIds, final VaultAuthToken authToken,
+                         final String secretFilesDir) {
         this.vaultConfiguration = vaultConfiguration;
         this.vaultCredential = vaultCredential;
         this.leaseIds = leaseIds;
+        this.authToken = authToken;
+        this.secretFilesDir = secretFilesDir;
     }
 
     @Override
     public void tearDown(final Run<?, ?> build, final FilePath workspace, final Launcher launcher, final TaskListener listener) throws IOException, InterruptedException {
-        VaultAccessor vaultAccessor = new VaultAccessor();
-        vaultAccessor.init(vaultConfiguration.getVaultUrl());
-        vaultAccessor.auth(vaultCredential);
-        for (String leaseId : leaseIds) {
-            if (leaseId != null && !leaseId.isEmpty()) {
-                vaultAccessor.revoke(leaseId);
+        try {
+            if (secretFilesDir != null) {
+                VaultSecretFiles.deleteDirectory(workspace, secretFilesDir);
             }
+        } finally {
+            revokeLeases(build);
+        }
+    }
+
+    private void revokeLeases(Run<?, ?> build) {
+        if (leaseIds == null || leaseIds.isEmpty()) {
+            return;
         }
+        // revocation happens asynchronously, so the executor is not held while talking to vault
+        VaultLeaseRevoker.get().revoke(vaultConfiguration.getVaultUrl(), vaultCredential.getId(), build.getParent().getFullName(), leaseIds, authToken,
+                VaultTimingAction.of(build));
     }
 }
@@ -0,0 +1,73 @@
+package com.datapipe.jenkins.vault;
+
+import com.bettercloud.vault.json.Json;
+import com.bettercloud.vault.json.JsonObject;
+import com.bettercloud.vault.json.ParseException;
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+
+/**
+ * Paths and responses of the version 2 key/value engine, which nests the values of a secret below {@code data} and
+ * keeps its versions below {@code metadata}.
+ */
+final class VaultKv2 {
+    private VaultKv2() {
+    }
+
+    static String dataPath(String mount, String path) {
+        return join(mount, "data", path);
+    }
+
+    static String dataPath(String mount, String path, int version) {
+        return dataPath(mount, path) + "?version=" + version;
+    }
+
+    static String metadataPath(String mount, String path) {
+        return join(mount, "metadata", path);
+    }
+
+    /**
+     * @return the {@code current_version} of a metadata response
+     */
+    static int currentVersion(String metadataPath, LogicalResponse metadata) {
+        String version = metadata.getData().get("current_version");
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            throw new VaultPluginException("no current version in the metadata at path: " + metadataPath, e);
+        }
+    }
+
+    /**
+     * @return a response holding the values of a data response, so it is used like the response of any other path
+     */
+    static LogicalResponse unwrap(String dataPath, LogicalResponse response) {
+        String values = response.getData().get("data");
+        if (values == null) {
+            throw new VaultPluginException("no values at path: " + dataPath + " - it may have been deleted");
+        }
+        JsonObject unwrapped;
+        try {
+            unwrapped = Json.object().add("data", Json.parse(values).asObject());
+        } catch (ParseException | UnsupportedOperationException e) {
+            throw new VaultPluginException("unexpected values at path: " + dataPath + " - is it a version 2 key/value engine?", e);
+        }
+        return LogicalResponses.of(unwrapped);
+    }
+
+    private static String join(String mount, String kind, String path) {
+        return trimSlashes(mount) + '/' + kind + '/' + trimSlashes(path);
+    }
+
+    private static String trimSlashes(String s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) == '/') {
+            end--;
+        }
+        return s.substring(start, end);
+    }
+}
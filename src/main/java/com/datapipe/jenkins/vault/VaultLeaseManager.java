@@ -0,0 +1,249 @@
+package com.datapipe.jenkins.vault;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+import com.bettercloud.vault.json.Json;
+import com.bettercloud.vault.json.JsonValue;
+import com.bettercloud.vault.json.ParseException;
+import com.bettercloud.vault.response.LogicalResponse;
+import com.bettercloud.vault.response.VaultResponse;
+import com.bettercloud.vault.rest.RestResponse;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.google.common.annotations.VisibleForTesting;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Renews the leases of dynamic secrets while the build that read them is running, so they can be given short TTLs
+ * even when builds take hours.
+ * <p>
+ * Each renewable lease is renewed once {@link #RENEW_AT} of its TTL has passed, asking for its original TTL again.
+ * Renewals wait for Vault, so they run on a small scheduler of their own rather than the shared
+ * {@link jenkins.util.Timer}. Renewal stops when the lease is queued for revocation, or when Vault no longer extends
+ * it because it reached its maximum TTL. Tracking is not persisted, so leases are not renewed after a restart.
+ */
+public final class VaultLeaseManager {
+    private static final Logger LOGGER = Logger.getLogger(VaultLeaseManager.class.getName());
+
+    private static final String RENEW_AT_PROPERTY = VaultLeaseManager.class.getName() + ".renewAt";
+
+    private static final double DEFAULT_RENEW_AT = 0.66;
+
+    /** Fraction of the TTL of a lease after which it is renewed. */
+    static final double RENEW_AT = renewAt(System.getProperty(RENEW_AT_PROPERTY));
+
+    /** Leases with a shorter TTL are not worth renewing. */
+    private static final long MIN_DURATION_SECONDS = 5;
+
+    private static final VaultLeaseManager INSTANCE = new VaultLeaseManager();
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER;
+
+    static {
+        SCHEDULER = new ScheduledThreadPoolExecutor(2, new NamingThreadFactory(new DaemonThreadFactory(), "VaultLeaseManager"));
+        // most leases are released long before their first renewal
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final ConcurrentMap<String, TrackedLease> leases = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    VaultLeaseManager() {
+    }
+
+    /**
+     * @return the configured fraction, or the default if it is not set or not strictly between 0 and 1
+     */
+    @VisibleForTesting
+    static double renewAt(@CheckForNull String value) {
+        if (value == null) {
+            return DEFAULT_RENEW_AT;
+        }
+        try {
+            double renewAt = Double.parseDouble(value.trim());
+            if (renewAt > 0 && renewAt < 1) {
+                return renewAt;
+            }
+        } catch (NumberFormatException e) {
+            // logged below
+        }
+        LOGGER.log(Level.WARNING, "{0}={1} is not a fraction between 0 and 1, using {2}",
+                new Object[] {RENEW_AT_PROPERTY, value, DEFAULT_RENEW_AT});
+        return DEFAULT_RENEW_AT;
+    }
+
+    public static VaultLeaseManager get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts renewing the renewable leases among the given responses.
+     *
+     * @param authToken a token to renew with as long as it is valid, so no new login is needed
+     */
+    public void track(String vaultUrl, VaultCredential credential, @CheckForNull VaultAuthToken authToken,
+                      List<LogicalResponse> responses) {
+        VaultAccessor vaultAccessor = null;
+        for (LogicalResponse response : responses) {
+            String leaseId = response.getLeaseId();
+            Long duration = response.getLeaseDuration();
+            if (leaseId == null || leaseId.isEmpty() || !Boolean.TRUE.equals(response.getRenewable())
+                    || duration == null || duration < MIN_DURATION_SECONDS) {
+                continue;
+            }
+            if (vaultAccessor == null) {
+                vaultAccessor = new RenewingAccessor(vaultUrl, credential, authToken);
+            }
+            TrackedLease lease = new TrackedLease(leaseId, duration, vaultAccessor);
+            leases.put(leaseId, lease);
+            lease.schedule(duration);
+        }
+    }
+
+    /**
+     * Stops renewing the given leases.
+     */
+    public void release(Collection<String> leaseIds) {
+        for (String leaseId : leaseIds) {
+            TrackedLease lease = leaseId == null ? null : leases.remove(leaseId);
+            if (lease != null) {
+                lease.cancel();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    int getTrackedCount() {
+        return leases.size();
+    }
+
+    /**
+     * @return the {@code lease_duration} of a renewal response, {@code 0} if there is none
+     */
+    static long leaseDuration(VaultResponse response) {
+        RestResponse restResponse = response.getRestResponse();
+        if (restResponse == null || restResponse.getBody() == null) {
+            return 0;
+        }
+        try {
+            JsonValue duration = Json.parse(new String(restResponse.getBody(), StandardCharsets.UTF_8)).asObject().get("lease_duration");
+            return duration != null && duration.isNumber() ? duration.asLong() : 0;
+        } catch (ParseException | UnsupportedOperationException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Delay until the next renewal of a lease valid for the given number of seconds.
+     */
+    static long renewalDelayMillis(long durationSeconds) {
+        return (long) (TimeUnit.SECONDS.toMillis(durationSeconds) * RENEW_AT);
+    }
+
+    /**
+     * Logs in lazily, as most leases are released before their first renewal.
+     */
+    private static final class RenewingAccessor extends VaultAccessor {
+        private static final long serialVersionUID = 1L;
+
+        private final String vaultUrl;
+        private final transient VaultCredential credential;
+        private transient VaultAuthToken authToken;
+        private transient boolean initialized;
+
+        RenewingAccessor(String vaultUrl, VaultCredential credential, @CheckForNull VaultAuthToken authToken) {
+            this.vaultUrl = vaultUrl;
+            this.credential = credential;
+            this.authToken = authToken;
+        }
+
+        @Override
+        public synchronized long renew(String leaseId, long incrementSeconds) {
+            if (!initialized) {
+                init(vaultUrl);
+                if (authToken != null && !authToken.isExpired()) {
+                    useToken(authToken);
+                } else {
+                    auth(credential);
+                }
+                authToken = null;
+                initialized = true;
+            }
+            return super.renew(leaseId, incrementSeconds);
+        }
+    }
+
+    private final class TrackedLease implements Runnable {
+        private final String leaseId;
+        private final long increment;
+        private final VaultAccessor vaultAccessor;
+        private long expiresAt;
+        private ScheduledFuture<?> next;
+        private boolean cancelled;
+
+        TrackedLease(String leaseId, long increment, VaultAccessor vaultAccessor) {
+            this.leaseId = leaseId;
+            this.increment = increment;
+            this.vaultAccessor = vaultAccessor;
+        }
+
+        synchronized void schedule(long durationSeconds) {
+            if (cancelled) {
+                return;
+            }
+            expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(durationSeconds);
+            next = SCHEDULER.schedule(this, renewalDelayMillis(durationSeconds), TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            long duration;
+            try {
+                duration = vaultAccessor.renew(leaseId, increment);
+            } catch (RuntimeException e) {
+                retryOrDrop(e);
+                return;
+            }
+            if (duration < MIN_DURATION_SECONDS) {
+                // reached its maximum TTL, renewing would not extend it any more
+                leases.remove(leaseId, this);
+                return;
+            }
+            schedule(duration);
+        }
+
+        private synchronized void retryOrDrop(RuntimeException e) {
+            if (cancelled) {
+                return;
+            }
+            long remaining = expiresAt - System.currentTimeMillis();
+            if (remaining < TimeUnit.SECONDS.toMillis(MIN_DURATION_SECONDS)) {
+                LOGGER.log(Level.WARNING, "could not renew vault lease " + leaseId + ", it will expire", e);
+                leases.remove(leaseId, this);
+                return;
+            }
+            LOGGER.log(Level.FINE, "could not renew vault lease " + leaseId + ", will retry", e);
+            next = SCHEDULER.schedule(this, remaining / 2, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.datapipe.jenkins.vault;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.credentials.VaultCredentialCache;
+import com.google.common.annotations.VisibleForTesting;
+
+import hudson.BulkChange;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+/**
+ * Revokes leases of dynamic secrets off the build thread.
+ * <p>
+ * Pending revocations are persisted, so leases are still revoked after a restart of the controller. Revocations are
+ * grouped by Vault URL and credential, so each group needs a single (usually cached) login, and failed revocations
+ * are retried with exponential backoff.
+ */
+@Extension
+public class VaultLeaseRevoker implements Saveable {
+    private static final Logger LOGGER = Logger.getLogger(VaultLeaseRevoker.class.getName());
+
+    static final int MAX_ATTEMPTS = 10;
+
+    static final long INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(5);
+
+    static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Revocations wait for Vault, possibly until its timeouts when it is down, so they do not run on the shared
+     * {@link jenkins.util.Timer}. One thread is enough, as only one pass runs at a time anyway.
+     */
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "VaultLeaseRevoker"));
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private List<PendingRevocation> pending = new ArrayList<>();
+
+    private transient final ReentrantLock processing = new ReentrantLock();
+
+    public VaultLeaseRevoker() {
+        load();
+    }
+
+    @Nonnull
+    public static VaultLeaseRevoker get() {
+        VaultLeaseRevoker instance = ExtensionList.lookup(VaultLeaseRevoker.class).get(VaultLeaseRevoker.class);
+        if (instance == null) {
+            throw new IllegalStateException();
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the given leases for revocation and returns immediately. They are no longer renewed.
+     *
+     * @param itemFullName the item whose credentials are used to log in, {@code null} to only use global credentials
+     * @param authToken a token to use as long as it is valid, so no new login is needed; it is never persisted. If
+     *                  Vault rejects it, the credential is used to log in again.
+     */
+    public void revoke(String vaultUrl, String credentialId, @CheckForNull String itemFullName, Collection<String> leaseIds,
+                       @CheckForNull VaultAuthToken authToken) {
+        revoke(vaultUrl, credentialId, itemFullName, leaseIds, authToken, null);
+    }
+
+    /**
+     * Queues the given leases for revocation and returns immediately.
+     *
+     * @param timing the build whose leases these are, to record how long revoking them took
+     */
+    public void revoke(String vaultUrl, String credentialId, @CheckForNull String itemFullName, Collection<String> leaseIds,
+                       @CheckForNull VaultAuthToken authToken, @CheckForNull VaultTimingAction timing) {
+        VaultLeaseManager.get().release(leaseIds);
+        synchronized (this) {
+            for (String leaseId : leaseIds) {
+                if (leaseId != null && !leaseId.isEmpty()) {
+                    PendingRevocation revocation = new PendingRevocation(vaultUrl, credentialId, itemFullName, leaseId);
+                    revocation.authToken = authToken;
+                    revocation.timing = timing;
+                    pending.add(revocation);
+                }
+            }
+            save();
+        }
+        revokeSoon();
+    }
+
+    /**
+     * Revokes the due leases on the {@link #EXECUTOR}.
+     */
+    @VisibleForTesting
+    void revokeSoon() {
+        EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                revokeDue();
+            }
+        });
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    void revokeDue() {
+        if (!processing.tryLock()) {
+            return;
+        }
+        try {
+            Map<String, List<PendingRevocation>> groups = new LinkedHashMap<>();
+            for (PendingRevocation revocation : due()) {
+                List<PendingRevocation> group = groups.get(revocation.groupKey());
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.put(revocation.groupKey(), group);
+                }
+                group.add(revocation);
+            }
+            for (List<PendingRevocation> group : groups.values()) {
+                revokeGroup(group);
+            }
+            if (!groups.isEmpty()) {
+                save();
+            }
+        } finally {
+            processing.unlock();
+        }
+    }
+
+    private void revokeGroup(List<PendingRevocation> group) {
+        VaultAuthToken authToken = validToken(group);
+        if (authToken != null) {
+            VaultAccessor vaultAccessor = login(group, authToken);
+            if (vaultAccessor == null) {
+                return;
+            }
+            group = revokeAll(vaultAccessor, group, false);
+            if (group.isEmpty()) {
+                return;
+            }
+            // the build's token was revoked or lost its permissions before its TTL ran out, log in instead
+            for (PendingRevocation revocation : group) {
+                revocation.authToken = null;
+            }
+        }
+        VaultAccessor vaultAccessor = login(group, null);
+        if (vaultAccessor != null) {
+            revokeAll(vaultAccessor, group, true);
+        }
+    }
+
+    /**
+     * @param authToken the token to use, {@code null} to log in with the credential of the group
+     * @return the accessor, {@code null} if logging in failed and the group was rescheduled
+     */
+    @CheckForNull
+    private VaultAccessor login(List<PendingRevocation> group, @CheckForNull VaultAuthToken authToken) {
+        try {
+            PendingRevocation first = group.get(0);
+            VaultAccessor vaultAccessor = newAccessor();
+            vaultAccessor.init(first.vaultUrl);
+            if (authToken != null) {
+                vaultAccessor.useToken(authToken);
+            } else {
+                vaultAccessor.auth(lookupCredential(first));
+            }
+            return vaultAccessor;
+        } catch (RuntimeException e) {
+            failed(group, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param countFailures whether failed revocations count as an attempt, or are returned to be tried again at once
+     * @return the revocations that failed and were not counted
+     */
+    private List<PendingRevocation> revokeAll(VaultAccessor vaultAccessor, List<PendingRevocation> revocations,
+                                              boolean countFailures) {
+        List<PendingRevocation> notRevoked = new ArrayList<>();
+        Set<VaultTimingAction> timed = new LinkedHashSet<>();
+        for (PendingRevocation revocation : revocations) {
+            try {
+                long start = System.nanoTime();
+                vaultAccessor.revoke(revocation.leaseId);
+                succeeded(revocation);
+                if (revocation.timing != null) {
+                    revocation.timing.record(VaultTimingAction.REVOKE, start);
+                    timed.add(revocation.timing);
+                }
+            } catch (RuntimeException e) {
+                if (countFailures) {
+                    failed(Collections.singletonList(revocation), e);
+                } else {
+                    LOGGER.log(Level.FINE, "could not revoke vault lease " + revocation.leaseId + " with the token of the build", e);
+                    notRevoked.add(revocation);
+                }
+            }
+        }
+        for (VaultTimingAction timing : timed) {
+            saveRun(timing.getRun());
+        }
+        return notRevoked;
+    }
+
+    @VisibleForTesting
+    VaultAccessor newAccessor() {
+        return new VaultAccessor();
+    }
+
+    @VisibleForTesting
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return how long to wait before the next attempt after the given number of failed ones
+     */
+    static long backoff(int attempts) {
+        return Math.min(INITIAL_BACKOFF << Math.min(attempts - 1, 20), MAX_BACKOFF);
+    }
+
+    private static void saveRun(@CheckForNull Run<?, ?> run) {
+        if (run == null) {
+            return;
+        }
+        try {
+            run.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "failed to save vault timings of " + run, e);
+        }
+    }
+
+    @CheckForNull
+    private static VaultAuthToken validToken(List<PendingRevocation> group) {
+        for (PendingRevocation revocation : group) {
+            if (revocation.authToken != null && !revocation.authToken.isExpired()) {
+                return revocation.authToken;
+            }
+        }
+        return null;
+    }
+
+    private VaultCredential lookupCredential(PendingRevocation revocation) {
+        Jenkins jenkins = Jenkins.getActiveInstance();
+        Item item = revocation.itemFullName == null ? null : jenkins.getItemByFullName(revocation.itemFullName);
+        return item != null
+                ? VaultCredentialCache.get().lookup(item, revocation.credentialId)
+                : VaultCredentialCache.get().lookup(jenkins, revocation.credentialId);
+    }
+
+    private synchronized List<PendingRevocation> due() {
+        long now = now();
+        List<PendingRevocation> due = new ArrayList<>();
+        for (PendingRevocation revocation : pending) {
+            if (revocation.notBefore <= now) {
+                due.add(revocation);
+            }
+        }
+        return due;
+    }
+
+    private synchronized void succeeded(PendingRevocation revocation) {
+        pending.remove(revocation);
+    }
+
+    private synchronized void failed(List<PendingRevocation> revocations, RuntimeException e) {
+        for (PendingRevocation revocation : revocations) {
+            revocation.attempts++;
+            if (revocation.attempts >= MAX_ATTEMPTS) {
+                LOGGER.log(Level.WARNING, "giving up revoking vault lease " + revocation.leaseId + " after " + revocation.attempts + " attempts", e);
+                pending.remove(revocation);
+            } else {
+                LOGGER.log(Level.FINE, "could not revoke vault lease " + revocation.leaseId + ", will retry", e);
+                revocation.notBefore = now() + backoff(revocation.attempts);
+            }
+        }
+    }
+
+    private XmlFile getConfigFile() {
+        return new XmlFile(new File(Jenkins.getActiveInstance().getRootDir(), getClass().getName() + ".xml"));
+    }
+
+    private synchronized void load() {
+        XmlFile file = getConfigFile();
+        if (file.exists()) {
+            try {
+                file.unmarshal(this);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "failed to load pending vault lease revocations from " + file, e);
+            }
+        }
+        if (pending == null) {
+            pending = new ArrayList<>();
+        }
+    }
+
+    @Override
+    public synchronized void save() {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        XmlFile file = getConfigFile();
+        try {
+            file.write(this);
+            SaveableListener.fireOnChange(this, file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to save pending vault lease revocations to " + file, e);
+        }
+    }
+
+    static final class PendingRevocation {
+        private final String vaultUrl;
+        private final String credentialId;
+        private final String itemFullName;
+        private final String leaseId;
+        private int attempts;
+        private long notBefore;
+        private transient VaultAuthToken authToken;
+        private transient VaultTimingAction timing;
+
+        PendingRevocation(String vaultUrl, String credentialId, String itemFullName, String leaseId) {
+            this.vaultUrl = vaultUrl;
+            this.credentialId = credentialId;
+            this.itemFullName = itemFullName;
+            this.leaseId = leaseId;
+        }
+
+        String groupKey() {
+            return vaultUrl + '\n' + credentialId + '\n' + itemFullName;
+        }
+    }
+
+    /**
+     * Picks up revocations that are due for a retry or were queued before a restart.
+     */
+    @Extension
+    public static class Retrier extends AsyncPeriodicWork {
+        public Retrier() {
+            super("Vault lease revocation");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.SECONDS.toMillis(30);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException, InterruptedException {
+            get().revokeDue();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.datapipe.jenkins.vault;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import com.bettercloud.vault.VaultConfig;
+import com.bettercloud.vault.VaultException;
+import com.bettercloud.vault.json.Json;
+import com.bettercloud.vault.json.JsonObject;
+import com.bettercloud.vault.json.JsonValue;
+import com.bettercloud.vault.json.ParseException;
+import com.bettercloud.vault.response.LogicalResponse;
+import com.bettercloud.vault.rest.Rest;
+import com.bettercloud.vault.rest.RestException;
+import com.bettercloud.vault.rest.RestResponse;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Response wrapping: the controller only asks Vault for a single-use token wrapping the response of a path, and the
+ * agent exchanges it for the values, so they go from Vault to the agent without passing through the controller.
+ * The agent only hands the lease of the response back, so dynamic secrets are renewed and revoked like any other.
+ */
+final class VaultResponseWrapping {
+    /** Seconds a wrapping token stays valid; long enough for a prefetched one to wait for an executor. */
+    static final int WRAP_TTL = Integer.getInteger(VaultResponseWrapping.class.getName() + ".wrapTtlSeconds", 300);
+
+    private VaultResponseWrapping() {
+    }
+
+    /**
+     * @return the token wrapping the response of the given path
+     */
+    static String wrap(VaultConfig config, String token, String path) throws VaultException {
+        RestResponse response;
+        try {
+            response = new Rest()
+                    .url(config.getAddress() + "/v1/" + path)
+                    .header("X-Vault-Token", token)
+                    .header("X-Vault-Wrap-TTL", WRAP_TTL + "s")
+                    .connectTimeoutSeconds(config.getOpenTimeout())
+                    .readTimeoutSeconds(config.getReadTimeout())
+                    .sslVerification(config.getSslConfig().isVerify())
+                    .sslContext(config.getSslConfig().getSslContext())
+                    .get();
+        } catch (RestException e) {
+            throw new VaultException(e);
+        }
+        JsonObject wrapInfo = field(body(response), "wrap_info");
+        JsonValue wrappingToken = wrapInfo == null ? null : wrapInfo.get("token");
+        if (wrappingToken == null || !wrappingToken.isString()) {
+            throw new VaultException("no wrapped response for path " + path, response.getStatus());
+        }
+        return wrappingToken.asString();
+    }
+
+    /**
+     * @return a response carrying only the given wrapping token, like the one Vault returned for the wrapped read
+     */
+    static LogicalResponse asResponse(String wrappingToken) {
+        JsonObject body = Json.object()
+                .add("data", Json.object())
+                .add("wrap_info", Json.object().add("token", wrappingToken));
+        return LogicalResponses.of(body);
+    }
+
+    /**
+     * @return the wrapping token of a response created by {@link #asResponse(String)}
+     */
+    static String wrappingToken(LogicalResponse response) {
+        JsonObject wrapInfo;
+        try {
+            wrapInfo = field(body(response.getRestResponse()), "wrap_info");
+        } catch (VaultException e) {
+            throw new VaultPluginException("not a wrapped response", e);
+        }
+        JsonValue token = wrapInfo == null ? null : wrapInfo.get("token");
+        if (token == null || !token.isString()) {
+            throw new VaultPluginException("not a wrapped response");
+        }
+        return token.asString();
+    }
+
+    /**
+     * @return a response carrying only the lease of an unwrapped response, as returned by {@link UnwrapToFiles}
+     */
+    static LogicalResponse leaseResponse(String lease) {
+        return LogicalResponses.of(lease);
+    }
+
+    /**
+     * @return the response wrapped by the given token
+     */
+    static JsonObject unwrap(VaultConfig config, String wrappingToken) throws VaultException {
+        RestResponse response;
+        try {
+            response = new Rest()
+                    .url(config.getAddress() + "/v1/sys/wrapping/unwrap")
+                    .header("X-Vault-Token", wrappingToken)
+                    .connectTimeoutSeconds(config.getOpenTimeout())
+                    .readTimeoutSeconds(config.getReadTimeout())
+                    .sslVerification(config.getSslConfig().isVerify())
+                    .sslContext(config.getSslConfig().getSslContext())
+                    .post();
+        } catch (RestException e) {
+            throw new VaultException(e);
+        }
+        JsonObject body = body(response);
+        if (field(body, "data") == null) {
+            throw new VaultException("no data in unwrapped response", response.getStatus());
+        }
+        return body;
+    }
+
+    private static JsonObject body(RestResponse response) throws VaultException {
+        if (response.getStatus() != 200) {
+            throw new VaultException("vault responded with HTTP status code " + response.getStatus(), response.getStatus());
+        }
+        try {
+            return Json.parse(new String(response.getBody(), StandardCharsets.UTF_8)).asObject();
+        } catch (ParseException | UnsupportedOperationException e) {
+            throw new VaultException(e);
+        }
+    }
+
+    private static JsonObject field(JsonObject object, String name) {
+        JsonValue value = object.get(name);
+        return value != null && value.isObject() ? value.asObject() : null;
+    }
+
+    /**
+     * Unwraps a response on the agent and writes the values of the given keys to files of the directory it is
+     * invoked on, readable by the owner only. Returns the lease of the response without its values, {@code null} if
+     * it has none.
+     */
+    static final class UnwrapToFiles extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final String vaultUrl;
+        private final String wrappingToken;
+        /** Variable names by vault key. */
+        private final Map<String, String> files;
+        /** Whether the values are nested below {@code data}, as in responses of a version 2 key/value engine. */
+        private final boolean kv2;
+
+        UnwrapToFiles(String vaultUrl, String wrappingToken, Map<String, String> files, boolean kv2) {
+            this.vaultUrl = vaultUrl;
+            this.wrappingToken = wrappingToken;
+            this.files = files;
+            this.kv2 = kv2;
+        }
+
+        @Override
+        public String invoke(File dir, VirtualChannel channel) throws IOException, InterruptedException {
+            JsonObject response;
+            try {
+                response = unwrap(VaultClientFactory.newConfig(vaultUrl), wrappingToken);
+            } catch (VaultException e) {
+                throw new IOException("could not unwrap secret from vault: " + e.getMessage(), e);
+            }
+            JsonObject data = field(response, "data");
+            if (kv2) {
+                data = field(data, "data");
+                if (data == null) {
+                    throw new IOException("no values in unwrapped key/value secret");
+                }
+            }
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                JsonValue value = data.get(file.getKey());
+                String text = value == null || value.isNull() ? "" : value.isString() ? value.asString() : value.toString();
+                VaultSecretFiles.write(dir, file.getValue(), text);
+            }
+            return lease(response);
+        }
+
+        @CheckForNull
+        private static String lease(JsonObject response) {
+            JsonValue leaseId = response.get("lease_id");
+            if (leaseId == null || !leaseId.isString() || leaseId.asString().isEmpty()) {
+                return null;
+            }
+            JsonObject lease = Json.object().add("lease_id", leaseId).add("data", Json.object());
+            for (String name : new String[] {"lease_duration", "renewable"}) {
+                JsonValue value = response.get(name);
+                if (value != null) {
+                    lease.add(name, value);
+                }
+            }
+            return lease.toString();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.datapipe.jenkins.vault;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.CheckForNull;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import com.datapipe.jenkins.vault.model.VaultSecretValue;
+
+import hudson.FilePath;
+
+/**
+ * The environment variables, values to mask and secret files of a build, bound from the responses for its
+ * {@link VaultSecret}s. Shared by {@link VaultBuildWrapper} and {@link VaultStep}.
+ */
+final class VaultSecretBindings {
+    private final Map<String, String> env = new LinkedHashMap<>();
+
+    private final List<String> valuesToMask = new ArrayList<>();
+
+    private FilePath filesDir;
+
+    private VaultSecretBindings() {
+    }
+
+    /**
+     * @param responses the responses for the given secrets, in the same order
+     * @param workspace where secret files are written, only needed by secrets that use them
+     * @param unwrappedLeases where the leases of wrapped responses are added once the agent unwrapped them, so they
+     *                        can be renewed and revoked - also if binding fails afterwards
+     */
+    static VaultSecretBindings bind(String vaultUrl, List<VaultSecret> vaultSecrets, List<LogicalResponse> responses,
+                                    @CheckForNull FilePath workspace, List<LogicalResponse> unwrappedLeases)
+            throws IOException, InterruptedException {
+        VaultSecretBindings bindings = new VaultSecretBindings();
+        try {
+            Map<String, String> files = new LinkedHashMap<>();
+            for (int i = 0; i < vaultSecrets.size(); i++) {
+                VaultSecret vaultSecret = vaultSecrets.get(i);
+                if (vaultSecret.isWrapped()) {
+                    bindings.bindWrapped(vaultUrl, vaultSecret, responses.get(i), workspace, unwrappedLeases, files);
+                } else {
+                    bindings.bindValues(vaultSecret, responses.get(i).getData(), files);
+                }
+            }
+            bindings.writeFiles(files, workspace);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (bindings.filesDir != null) {
+                bindings.filesDir.deleteRecursive();
+            }
+            throw e;
+        }
+        return bindings;
+    }
+
+    /**
+     * @param files where values to write to files are added, by variable name
+     */
+    private void bindValues(VaultSecret vaultSecret, Map<String, String> values, Map<String, String> files) {
+        if (vaultSecret.bindsKeys()) {
+            Pattern keyPattern = keyPattern(vaultSecret);
+            for (Map.Entry<String, String> value : new TreeMap<>(values).entrySet()) {
+                if (keyPattern == null || keyPattern.matcher(value.getKey()).matches()) {
+                    valuesToMask.add(value.getValue());
+                    env.put(envVarName(vaultSecret.getEnvVarPrefix(), value.getKey()), value.getValue());
+                }
+            }
+        }
+        for (VaultSecretValue value : secretValues(vaultSecret)) {
+            String secret = values.get(value.getVaultKey());
+            valuesToMask.add(secret);
+            if (value.isFile()) {
+                // bound once the files are written
+                env.remove(value.getEnvVar());
+                files.put(VaultSecretFiles.fileName(value.getEnvVar()), secret == null ? "" : secret);
+            } else {
+                files.remove(value.getEnvVar());
+                env.put(value.getEnvVar(), secret);
+            }
+        }
+    }
+
+    /**
+     * Writes all values bound to files at once, so the agent is only called once.
+     */
+    private void writeFiles(Map<String, String> files, @CheckForNull FilePath workspace) throws IOException, InterruptedException {
+        if (files.isEmpty()) {
+            return;
+        }
+        FilePath dir = filesDir(workspace);
+        dir.act(new VaultSecretFiles.WriteFiles(files));
+        for (String envVar : files.keySet()) {
+            env.put(envVar, dir.child(VaultSecretFiles.fileName(envVar)).getRemote());
+        }
+    }
+
+    /**
+     * @return the name of the variable a key is bound to: the key in upper case, with every character that is not
+     * allowed in a variable name replaced by {@code _}
+     */
+    static String envVarName(@CheckForNull String prefix, String key) {
+        String name = key.toUpperCase(Locale.ENGLISH).replaceAll("[^A-Z0-9_]", "_");
+        return prefix == null ? name : prefix + name;
+    }
+
+    @CheckForNull
+    private static Pattern keyPattern(VaultSecret vaultSecret) {
+        if (vaultSecret.getKeyPattern() == null) {
+            return null;
+        }
+        try {
+            return Pattern.compile(vaultSecret.getKeyPattern());
+        } catch (PatternSyntaxException e) {
+            throw new VaultPluginException("Invalid key pattern for " + vaultSecret.getPath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static List<VaultSecretValue> secretValues(VaultSecret vaultSecret) {
+        List<VaultSecretValue> secretValues = vaultSecret.getSecretValues();
+        return secretValues == null ? Collections.<VaultSecretValue>emptyList() : secretValues;
+    }
+
+    /**
+     * The agent unwraps the response itself, so the values never reach the controller - and cannot be masked by it.
+     * As the keys are not known beforehand, only the secret values are bound.
+     *
+     * @param files the values of secrets declared earlier still to be written to files, by variable name; those bound
+     *              to the same variables are dropped, so they do not replace the unwrapped values
+     */
+    private void bindWrapped(String vaultUrl, VaultSecret vaultSecret, LogicalResponse response, @CheckForNull FilePath workspace,
+                             List<LogicalResponse> unwrappedLeases, Map<String, String> files) throws IOException, InterruptedException {
+        Map<String, String> unwrappedFiles = new LinkedHashMap<>();
+        for (VaultSecretValue value : secretValues(vaultSecret)) {
+            unwrappedFiles.put(value.getVaultKey(), VaultSecretFiles.fileName(value.getEnvVar()));
+        }
+        FilePath dir = filesDir(workspace);
+        String lease = dir.act(new VaultResponseWrapping.UnwrapToFiles(vaultUrl, VaultResponseWrapping.wrappingToken(response),
+                unwrappedFiles, vaultSecret.getKvMount() != null));
+        if (lease != null) {
+            unwrappedLeases.add(VaultResponseWrapping.leaseResponse(lease));
+        }
+        for (VaultSecretValue value : secretValues(vaultSecret)) {
+            files.remove(value.getEnvVar());
+            env.put(value.getEnvVar(), dir.child(VaultSecretFiles.fileName(value.getEnvVar())).getRemote());
+        }
+    }
+
+    private FilePath filesDir(@CheckForNull FilePath workspace) throws IOException, InterruptedException {
+        if (filesDir == null) {
+            filesDir = VaultSecretFiles.createDirectory(workspace);
+        }
+        return filesDir;
+    }
+
+    /**
+     * @return the variables to add to the environment, by name
+     */
+    Map<String, String> getEnv() {
+        return env;
+    }
+
+    List<String> getValuesToMask() {
+        return valuesToMask;
+    }
+
+    /**
+     * @return the path of the directory holding the secret files on the agent, {@code null} if there are none
+     */
+    @CheckForNull
+    String getFilesDir() {
+        return filesDir == null ? null : filesDir.getRemote();
+    }
+}
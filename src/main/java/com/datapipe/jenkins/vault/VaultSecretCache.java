@@ -0,0 +1,189 @@
+package com.datapipe.jenkins.vault;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.bettercloud.vault.rest.RestResponse;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Controller-wide cache of responses for paths that opted in with a
+ * {@link com.datapipe.jenkins.vault.model.VaultSecret#getCacheTtl() cache TTL}.
+ * <p>
+ * Entries are keyed by Vault URL, the policies of the token that read them and the path, so a build is only served
+ * what its own token may read. The policies of a token configured by the user, rather than obtained by logging in,
+ * are not known; entries read with such a token are keyed by a digest of the token instead, so they are only shared
+ * by builds using the same token. Responses carrying a lease are never cached. Response bodies are kept encrypted with
+ * a key that only exists in the memory of this process, and at most {@link #MAX_ENTRIES} entries are kept, evicting
+ * the least recently used.
+ */
+final class VaultSecretCache {
+    private static final Logger LOGGER = Logger.getLogger(VaultSecretCache.class.getName());
+
+    static final int MAX_ENTRIES = Integer.getInteger(VaultSecretCache.class.getName() + ".maxEntries", 1000);
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final VaultSecretCache INSTANCE = new VaultSecretCache(MAX_ENTRIES);
+
+    private final SecretKey key;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final Map<Key, Entry> entries;
+
+    VaultSecretCache(final int maxEntries) {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(128, random);
+            key = generator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new VaultPluginException("could not create the key for the vault secret cache", e);
+        }
+        entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    static VaultSecretCache get() {
+        return INSTANCE;
+    }
+
+    @CheckForNull
+    LogicalResponse get(String vaultUrl, VaultAuthToken token, String path) {
+        Key cacheKey = new Key(vaultUrl, token, path);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(cacheKey);
+            if (entry == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() >= entry.expiresAt) {
+                entries.remove(cacheKey);
+                return null;
+            }
+        }
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, entry.iv));
+            byte[] body = cipher.doFinal(entry.encryptedBody);
+            return LogicalResponses.of(body);
+        } catch (GeneralSecurityException e) {
+            LOGGER.log(Level.FINE, "could not decrypt cached vault response for path " + path, e);
+            return null;
+        }
+    }
+
+    void put(String vaultUrl, VaultAuthToken token, String path, LogicalResponse response, long ttlSeconds) {
+        if (ttlSeconds <= 0 || !isCacheable(response)) {
+            return;
+        }
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+            byte[] encryptedBody = cipher.doFinal(response.getRestResponse().getBody());
+            Entry entry = new Entry(iv, encryptedBody, System.currentTimeMillis() + ttlSeconds * 1000);
+            synchronized (this) {
+                entries.put(new Key(vaultUrl, token, path), entry);
+            }
+        } catch (GeneralSecurityException e) {
+            LOGGER.log(Level.FINE, "could not encrypt vault response for path " + path + ", not caching it", e);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private static boolean isCacheable(LogicalResponse response) {
+        String leaseId = response.getLeaseId();
+        RestResponse restResponse = response.getRestResponse();
+        return (leaseId == null || leaseId.isEmpty())
+                && restResponse != null && restResponse.getStatus() == 200 && restResponse.getBody() != null;
+    }
+
+    private static final class Key {
+        private final String vaultUrl;
+        private final List<String> policies;
+        /** Digest of the token, only set when its policies are not known. */
+        private final String tokenDigest;
+        private final String path;
+
+        Key(String vaultUrl, VaultAuthToken token, String path) {
+            List<String> sorted = new ArrayList<>(token.getPolicies());
+            Collections.sort(sorted);
+            this.vaultUrl = vaultUrl;
+            this.policies = sorted;
+            this.tokenDigest = sorted.isEmpty() ? digest(token.getToken()) : null;
+            this.path = path;
+        }
+
+        private static String digest(String token) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+                return Base64.getEncoder().encodeToString(digest);
+            } catch (GeneralSecurityException e) {
+                throw new VaultPluginException("could not digest the vault token for the vault secret cache", e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return vaultUrl.equals(other.vaultUrl) && policies.equals(other.policies)
+                    && (tokenDigest == null ? other.tokenDigest == null : tokenDigest.equals(other.tokenDigest))
+                    && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] {vaultUrl, policies, tokenDigest, path});
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] iv;
+        private final byte[] encryptedBody;
+        private final long expiresAt;
+
+        Entry(byte[] iv, byte[] encryptedBody, long expiresAt) {
+            this.iv = iv;
+            this.encryptedBody = encryptedBody;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
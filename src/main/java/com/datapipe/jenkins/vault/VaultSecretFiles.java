@@ -0,0 +1,161 @@
+package com.datapipe.jenkins.vault;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.WorkspaceList;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Files on the agent holding secret values, for values that should not be passed around as environment variables.
+ * Each build gets a directory of its own, readable by the owner only, which is deleted when the build wrapper or
+ * step ends.
+ * <p>
+ * The directory is created in {@code /dev/shm} when the agent has it, so the values stay in memory and never reach
+ * a disk, and next to the workspace otherwise. The RAM-backed directory can be changed, or set to an empty value to
+ * always use the workspace, with the {@code com.datapipe.jenkins.vault.VaultSecretFiles.ramDirectory} system
+ * property.
+ */
+final class VaultSecretFiles {
+    static final String RAM_DIRECTORY = System.getProperty(VaultSecretFiles.class.getName() + ".ramDirectory", "/dev/shm");
+
+    private static final Pattern VARIABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private VaultSecretFiles() {
+    }
+
+    /**
+     * @return the name of the file holding the value bound to the given variable, which is the variable itself
+     * @throws VaultPluginException if it is not a valid variable name, as the file could then end up outside the
+     *                              directory of the build
+     */
+    static String fileName(String envVar) {
+        if (envVar == null || !VARIABLE_NAME.matcher(envVar).matches()) {
+            throw new VaultPluginException("Invalid variable name for a secret file: " + envVar
+                    + " - only letters, digits and _ are allowed, and it may not start with a digit");
+        }
+        return envVar;
+    }
+
+    /**
+     * @return a new directory for the secret files of a build using the given workspace
+     */
+    static FilePath createDirectory(@CheckForNull FilePath workspace) throws IOException, InterruptedException {
+        if (workspace == null) {
+            throw new IOException("secrets can only be written to files on a node with a workspace");
+        }
+        String remote = WorkspaceList.tempDir(workspace).act(new CreateDirectory(RAM_DIRECTORY));
+        return new FilePath(workspace.getChannel(), remote);
+    }
+
+    /**
+     * Deletes a directory created by {@link #createDirectory(FilePath)} on the node of the given workspace.
+     */
+    static void deleteDirectory(@CheckForNull FilePath workspace, String remote) throws IOException, InterruptedException {
+        if (workspace == null) {
+            return;
+        }
+        new FilePath(workspace.getChannel(), remote).deleteRecursive();
+    }
+
+    /**
+     * Creates an empty file only its owner can read and write, before anything is written to it.
+     */
+    static void createOwnerOnly(File file) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file.toPath());
+            ownerOnly(file);
+        }
+    }
+
+    /**
+     * Writes the value bound to a variable to a file of the given directory, created by
+     * {@link #createOwnerOnly(File)}. A file bound to the same variable by a secret declared earlier is replaced.
+     */
+    static void write(File dir, String envVar, String value) throws IOException {
+        File file = new File(dir, fileName(envVar));
+        Files.deleteIfExists(file.toPath());
+        createOwnerOnly(file);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void ownerOnly(File file) {
+        file.setReadable(false, false);
+        file.setWritable(false, false);
+        file.setExecutable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(true, true);
+        file.setExecutable(file.isDirectory(), true);
+    }
+
+    /**
+     * Creates the directory in the RAM-backed directory if the agent has it, in the given directory otherwise.
+     */
+    private static final class CreateDirectory extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final String ramDirectory;
+
+        CreateDirectory(String ramDirectory) {
+            this.ramDirectory = ramDirectory;
+        }
+
+        @Override
+        public String invoke(File tempDir, VirtualChannel channel) throws IOException {
+            File parent = ramDirectory.isEmpty() ? null : new File(ramDirectory);
+            if (parent == null || !parent.isDirectory() || !parent.canWrite()) {
+                parent = tempDir;
+                Files.createDirectories(parent.toPath());
+            }
+            Path dir;
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                dir = Files.createTempDirectory(parent.toPath(), "vault",
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                dir = Files.createTempDirectory(parent.toPath(), "vault");
+                ownerOnly(dir.toFile());
+            }
+            return dir.toAbsolutePath().toString();
+        }
+    }
+
+    /**
+     * Writes values to files of the directory it is called on.
+     */
+    static final class WriteFiles extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        /** Values by variable name. */
+        private final Map<String, String> files;
+
+        WriteFiles(Map<String, String> files) {
+            this.files = files;
+        }
+
+        @Override
+        public Void invoke(File dir, VirtualChannel channel) throws IOException {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                write(dir, file.getKey(), file.getValue());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.datapipe.jenkins.vault;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.credentials.VaultCredentialCache;
+import com.google.common.annotations.VisibleForTesting;
+
+import hudson.Extension;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Job;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+
+/**
+ * Fetches the secrets of a queued build that enabled {@link VaultBuildWrapper#isPrefetch()} as soon as it only
+ * waits for an executor, so {@link VaultBuildWrapper#setUp} just binds them.
+ * <p>
+ * Prefetched secrets are held in memory for at most {@link #TTL} milliseconds. Leases of secrets that are not
+ * used - because the item was cancelled, the holder expired or the configuration changed - are revoked.
+ */
+@Extension
+public class VaultSecretPrefetcher extends QueueListener {
+    private static final Logger LOGGER = Logger.getLogger(VaultSecretPrefetcher.class.getName());
+
+    static final long TTL = Long.getLong(VaultSecretPrefetcher.class.getName() + ".ttlMillis", TimeUnit.MINUTES.toMillis(2));
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(new DaemonThreadFactory(), "VaultSecretPrefetcher"));
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final ConcurrentMap<Long, Future<Prefetched>> prefetched = new ConcurrentHashMap<>();
+
+    @CheckForNull
+    public static VaultSecretPrefetcher get() {
+        return QueueListener.all().get(VaultSecretPrefetcher.class);
+    }
+
+    @Override
+    public void onEnterBuildable(Queue.BuildableItem item) {
+        if (!(item.task instanceof Job) || !(item.task instanceof BuildableItemWithBuildWrappers)) {
+            return;
+        }
+        VaultBuildWrapper wrapper = ((BuildableItemWithBuildWrappers) item.task).getBuildWrappersList().get(VaultBuildWrapper.class);
+        if (wrapper == null || !wrapper.isPrefetch() || wrapper.getVaultSecrets() == null || wrapper.getVaultSecrets().isEmpty()) {
+            return;
+        }
+        prefetch(item.getId(), (Job<?, ?>) item.task, wrapper);
+    }
+
+    @Override
+    public void onLeft(Queue.LeftItem item) {
+        if (item.isCancelled()) {
+            discard(item.getId());
+        }
+    }
+
+    void prefetch(final long queueId, final Job<?, ?> job, final VaultBuildWrapper wrapper) {
+        prefetch(queueId, new Callable<Prefetched>() {
+            @Override
+            public Prefetched call() throws Exception {
+                VaultConfiguration configuration = wrapper.resolveConfiguration(job);
+                if (configuration == null || StringUtils.isBlank(configuration.getVaultUrl())
+                        || StringUtils.isBlank(configuration.getVaultCredentialId())) {
+                    return null;
+                }
+                VaultCredential credential = VaultCredentialCache.get().lookup(job, configuration.getVaultCredentialId());
+                VaultAccessor vaultAccessor = new VaultAccessor();
+                vaultAccessor.init(configuration.getVaultUrl());
+                vaultAccessor.auth(credential);
+                List<LogicalResponse> responses = VaultSecretReader.readAll(vaultAccessor, wrapper.getVaultSecrets());
+                // renewed from now on, as the leases already run while the build waits
+                VaultLeaseManager.get().track(configuration.getVaultUrl(), credential, vaultAccessor.getToken(), responses);
+                return new Prefetched(job.getFullName(), configuration.getVaultUrl(), credential, responses, vaultAccessor.getToken());
+            }
+        });
+    }
+
+    @VisibleForTesting
+    void prefetch(long queueId, Callable<Prefetched> fetch) {
+        if (prefetched.containsKey(queueId)) {
+            return;
+        }
+        Future<Prefetched> future = EXECUTOR.submit(fetch);
+        if (prefetched.putIfAbsent(queueId, future) != null) {
+            future.cancel(true);
+            return;
+        }
+        expireAfter(queueId, TTL);
+    }
+
+    /**
+     * Discards the secrets of the given queue item once the delay has passed, unless they were taken by then.
+     */
+    @VisibleForTesting
+    void expireAfter(final long queueId, long delayMillis) {
+        Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                discard(queueId);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands out the secrets prefetched for a queue item, waiting for a fetch still in progress.
+     *
+     * @return {@code null} if nothing was prefetched for this item and configuration, or the fetch failed
+     */
+    @CheckForNull
+    public Prefetched take(long queueId, String vaultUrl, VaultCredential credential) throws InterruptedException {
+        Future<Prefetched> future = prefetched.remove(queueId);
+        if (future == null) {
+            return null;
+        }
+        Prefetched result;
+        try {
+            result = future.get();
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.FINE, "could not prefetch vault secrets for queue item " + queueId, e.getCause());
+            return null;
+        }
+        if (result == null) {
+            return null;
+        }
+        if (!result.vaultUrl.equals(vaultUrl) || result.credential != credential) {
+            revoke(result);
+            return null;
+        }
+        return result;
+    }
+
+    @VisibleForTesting
+    void discard(long queueId) {
+        Future<Prefetched> future = prefetched.remove(queueId);
+        if (future == null) {
+            return;
+        }
+        if (!future.isDone()) {
+            // leases created by an interrupted fetch are never handed out and expire with their TTL
+            future.cancel(true);
+            return;
+        }
+        try {
+            Prefetched result = future.get();
+            if (result != null) {
+                revoke(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // nothing was fetched, so there is nothing to revoke
+        }
+    }
+
+    @VisibleForTesting
+    void revoke(Prefetched result) {
+        List<String> leaseIds = VaultBuildWrapper.retrieveLeaseIds(result.responses);
+        if (!leaseIds.isEmpty()) {
+            VaultLeaseRevoker.get().revoke(result.vaultUrl, result.credential.getId(), result.itemFullName, leaseIds, result.token);
+        }
+    }
+
+    public static final class Prefetched {
+        private final String itemFullName;
+        private final String vaultUrl;
+        private final VaultCredential credential;
+        private final List<LogicalResponse> responses;
+        private final VaultAuthToken token;
+
+        Prefetched(String itemFullName, String vaultUrl, VaultCredential credential, List<LogicalResponse> responses, VaultAuthToken token) {
+            this.itemFullName = itemFullName;
+            this.vaultUrl = vaultUrl;
+            this.credential = credential;
+            this.responses = responses;
+            this.token = token;
+        }
+
+        public List<LogicalResponse> getResponses() {
+            return responses;
+        }
+
+        public VaultAuthToken getToken() {
+            return token;
+        }
+    }
+}
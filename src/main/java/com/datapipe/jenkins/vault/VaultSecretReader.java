@@ -0,0 +1,235 @@
+package com.datapipe.jenkins.vault;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+
+import com.bettercloud.vault.json.Json;
+import com.bettercloud.vault.json.JsonObject;
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Reads the paths of several {@link VaultSecret}s concurrently.
+ * <p>
+ * All reads on the controller share one bounded pool, so a single job declaring many paths cannot flood Vault.
+ * The pool size can be set with the {@code com.datapipe.jenkins.vault.VaultSecretReader.maxConcurrentReads}
+ * system property.
+ */
+public final class VaultSecretReader {
+    static final int MAX_CONCURRENT_READS = Integer.getInteger(VaultSecretReader.class.getName() + ".maxConcurrentReads", 8);
+
+    /** Most secrets read below the path of a recursive {@link VaultSecret}. */
+    static final int MAX_TREE_SECRETS = Integer.getInteger(VaultSecretReader.class.getName() + ".maxTreeSecrets", 1000);
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(MAX_CONCURRENT_READS, MAX_CONCURRENT_READS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(new DaemonThreadFactory(), "VaultSecretReader"));
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private VaultSecretReader() {
+    }
+
+    /**
+     * @return the responses for the paths of the given secrets, in the order the secrets are declared
+     */
+    public static List<LogicalResponse> readAll(VaultAccessor vaultAccessor, List<VaultSecret> vaultSecrets) throws InterruptedException {
+        return readAll(vaultAccessor, vaultSecrets, null);
+    }
+
+    /**
+     * @param timing where the duration of each read is recorded, if any
+     * @return the responses for the paths of the given secrets, in the order the secrets are declared
+     */
+    public static List<LogicalResponse> readAll(final VaultAccessor vaultAccessor, List<VaultSecret> vaultSecrets,
+                                                @CheckForNull final VaultTimingAction timing) throws InterruptedException {
+        if (vaultSecrets.size() == 1 && !vaultSecrets.get(0).isRecursive()) {
+            return Collections.singletonList(read(vaultAccessor, vaultSecrets.get(0), timing));
+        }
+        List<Future<LogicalResponse>> futures = new ArrayList<>(vaultSecrets.size());
+        for (final VaultSecret vaultSecret : vaultSecrets) {
+            // trees are read from this thread, which waits for their reads without holding a thread of the pool
+            futures.add(vaultSecret.isRecursive() ? null : EXECUTOR.submit(new Callable<LogicalResponse>() {
+                @Override
+                public LogicalResponse call() {
+                    return read(vaultAccessor, vaultSecret, timing);
+                }
+            }));
+        }
+        try {
+            List<LogicalResponse> responses = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                Future<LogicalResponse> future = futures.get(i);
+                responses.add(future == null ? readTree(vaultAccessor, vaultSecrets.get(i), timing) : future.get());
+            }
+            return responses;
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            cancelAll(futures);
+        }
+    }
+
+    /**
+     * Reads all secrets below the path of a recursive secret, listing it level by level.
+     *
+     * @return a response holding the values of all secrets, keyed by their path relative to the folder and their key
+     */
+    private static LogicalResponse readTree(final VaultAccessor vaultAccessor, final VaultSecret vaultSecret,
+                                            @CheckForNull VaultTimingAction timing) throws InterruptedException {
+        if (vaultSecret.isWrapped()) {
+            throw new VaultPluginException("The secrets below " + vaultSecret.getPath() + " cannot be read recursively through response wrapping.");
+        }
+        long start = System.nanoTime();
+        List<String> leaves = new ArrayList<>();
+        List<String> folders = Collections.singletonList("");
+        while (!folders.isEmpty()) {
+            List<Callable<List<String>>> listings = new ArrayList<>(folders.size());
+            for (final String folder : folders) {
+                listings.add(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        String path = join(vaultSecret.getPath(), folder);
+                        String mount = vaultSecret.getKvMount();
+                        return vaultAccessor.list(mount == null ? path : VaultKv2.metadataPath(mount, path));
+                    }
+                });
+            }
+            List<List<String>> keys = invokeAll(listings);
+            List<String> subFolders = new ArrayList<>();
+            for (int i = 0; i < folders.size(); i++) {
+                for (String key : keys.get(i)) {
+                    (key.endsWith("/") ? subFolders : leaves).add(folders.get(i) + key);
+                }
+            }
+            if (leaves.size() + subFolders.size() > MAX_TREE_SECRETS) {
+                throw new VaultPluginException("There are more than " + MAX_TREE_SECRETS + " secrets below " + vaultSecret.getPath() + ".");
+            }
+            folders = subFolders;
+        }
+
+        List<Callable<LogicalResponse>> reads = new ArrayList<>(leaves.size());
+        for (final String leaf : leaves) {
+            reads.add(new Callable<LogicalResponse>() {
+                @Override
+                public LogicalResponse call() {
+                    String path = join(vaultSecret.getPath(), leaf);
+                    String mount = vaultSecret.getKvMount();
+                    if (mount == null) {
+                        return read(vaultAccessor, path, vaultSecret.getCacheTtl(), true);
+                    }
+                    String dataPath = VaultKv2.dataPath(mount, path);
+                    return VaultKv2.unwrap(dataPath, read(vaultAccessor, dataPath, vaultSecret.getCacheTtl(), true));
+                }
+            });
+        }
+        List<LogicalResponse> responses = invokeAll(reads);
+        JsonObject data = Json.object();
+        for (int i = 0; i < leaves.size(); i++) {
+            for (Map.Entry<String, String> value : responses.get(i).getData().entrySet()) {
+                data.add(leaves.get(i) + "/" + value.getKey(), value.getValue());
+            }
+        }
+        if (timing != null) {
+            timing.record(VaultTimingAction.READ + vaultSecret.getPath() + " (" + leaves.size() + " secrets)", start);
+        }
+        return LogicalResponses.of(Json.object().add("data", data));
+    }
+
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) throws InterruptedException {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(EXECUTOR.submit(task));
+            }
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            cancelAll(futures);
+        }
+    }
+
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static String join(String folder, String relativePath) {
+        if (relativePath.isEmpty()) {
+            return folder;
+        }
+        return (folder.endsWith("/") ? folder : folder + "/") + relativePath;
+    }
+
+    private static LogicalResponse read(VaultAccessor vaultAccessor, VaultSecret vaultSecret, @CheckForNull VaultTimingAction timing) {
+        long start = System.nanoTime();
+        LogicalResponse response = read(vaultAccessor, vaultSecret);
+        if (timing != null) {
+            timing.record(VaultTimingAction.READ + vaultSecret.getPath(), start);
+        }
+        return response;
+    }
+
+    private static LogicalResponse read(VaultAccessor vaultAccessor, VaultSecret vaultSecret) {
+        String mount = vaultSecret.getKvMount();
+        if (vaultSecret.isWrapped()) {
+            String path = mount == null ? vaultSecret.getPath()
+                    : vaultSecret.getVersion() > 0 ? VaultKv2.dataPath(mount, vaultSecret.getPath(), vaultSecret.getVersion())
+                    : VaultKv2.dataPath(mount, vaultSecret.getPath());
+            return VaultResponseWrapping.asResponse(vaultAccessor.readWrapped(path));
+        }
+        if (mount == null) {
+            return read(vaultAccessor, vaultSecret.getPath(), vaultSecret.getCacheTtl(), false);
+        }
+        if (vaultSecret.getVersion() > 0 || vaultSecret.isCheckVersion()) {
+            return vaultAccessor.readKv2Version(mount, vaultSecret.getPath(), vaultSecret.getVersion());
+        }
+        String dataPath = VaultKv2.dataPath(mount, vaultSecret.getPath());
+        return VaultKv2.unwrap(dataPath, read(vaultAccessor, dataPath, vaultSecret.getCacheTtl(), true));
+    }
+
+    /**
+     * @param idempotent whether the path is known to be read without side effects: key/value secrets, and the
+     *                   secrets found by listing a folder, as the endpoints issuing leases cannot be listed
+     */
+    private static LogicalResponse read(VaultAccessor vaultAccessor, String path, int cacheTtl, boolean idempotent) {
+        if (cacheTtl > 0) {
+            return vaultAccessor.read(path, cacheTtl);
+        }
+        return idempotent ? vaultAccessor.readIdempotent(path) : vaultAccessor.read(path);
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new VaultPluginException("could not read from vault: " + cause.getMessage(), cause);
+    }
+}
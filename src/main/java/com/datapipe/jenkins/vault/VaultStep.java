@@ -0,0 +1,315 @@
+package com.datapipe.jenkins.vault;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.BodyInvoker;
+import org.jenkinsci.plugins.workflow.steps.EnvironmentExpander;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.configuration.VaultConfigurationCache;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.credentials.VaultCredentialCache;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.log.MaskingConsoleLogFilter;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import com.google.common.annotations.VisibleForTesting;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.console.ConsoleLogFilter;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Pipeline step {@code withVault}, which runs its body with the given secrets as environment variables.
+ * <p>
+ * Unlike {@link VaultBuildWrapper}, whose {@code setUp} blocks the thread running all Pipeline programs on the
+ * controller, the secrets are read on a pool of their own, so a slow Vault only holds up the builds waiting for
+ * it. Leases are queued for revocation when the body ends.
+ */
+public class VaultStep extends Step {
+    private final List<VaultSecret> vaultSecrets;
+    private VaultConfiguration configuration;
+
+    @DataBoundConstructor
+    public VaultStep(@CheckForNull List<VaultSecret> vaultSecrets) {
+        this.vaultSecrets = vaultSecrets;
+    }
+
+    public List<VaultSecret> getVaultSecrets() {
+        return this.vaultSecrets;
+    }
+
+    @DataBoundSetter
+    public void setConfiguration(VaultConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    public VaultConfiguration getConfiguration() {
+        return this.configuration;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new Execution(this, context);
+    }
+
+    @VisibleForTesting
+    VaultAccessor newAccessor() {
+        return new VaultAccessor();
+    }
+
+    private static final class Execution extends StepExecution {
+        private static final long serialVersionUID = 1L;
+
+        /** Threads reading secrets at once; further steps wait in the queue. */
+        private static final int THREADS = Integer.getInteger(VaultStep.class.getName() + ".threads", 10);
+
+        private static final ThreadPoolExecutor EXECUTOR;
+
+        static {
+            EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(new DaemonThreadFactory(), "VaultStep"));
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+
+        /** Only needed until the body starts, which is also when it could not be resumed after a restart. */
+        private final transient VaultStep step;
+
+        private transient Future<?> fetch;
+
+        private transient boolean stopped;
+
+        private boolean bodyStarted;
+
+        Execution(VaultStep step, StepContext context) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            final StepContext context = getContext();
+            if (step.vaultSecrets == null || step.vaultSecrets.isEmpty()) {
+                context.newBodyInvoker().withCallback(BodyExecutionCallback.wrap(context)).start();
+                bodyStarted = true;
+                return false;
+            }
+            final Run<?, ?> run = context.get(Run.class);
+            final FilePath workspace = context.get(FilePath.class);
+            synchronized (this) {
+                fetch = EXECUTOR.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            fetchAndStartBody(run, workspace);
+                        } catch (Throwable t) {
+                            if (!isStopped()) {
+                                context.onFailure(t);
+                            }
+                        }
+                    }
+                });
+            }
+            return false;
+        }
+
+        private void fetchAndStartBody(Run<?, ?> run, @CheckForNull FilePath workspace) throws IOException, InterruptedException {
+            VaultTimingAction timing = VaultTimingAction.of(run);
+
+            long start = System.nanoTime();
+            VaultConfiguration resolved = VaultConfigurationCache.get().forJob(run.getParent());
+            VaultConfiguration config = step.configuration != null ? step.configuration.mergeWithParent(resolved) : resolved;
+            if (config == null) {
+                throw new VaultPluginException("No configuration found - please configure the VaultPlugin.");
+            }
+            timing.record(VaultTimingAction.CONFIGURATION, start);
+
+            String url = config.getVaultUrl();
+            if (StringUtils.isBlank(url)) {
+                throw new VaultPluginException("The vault url was not configured - please specify the vault url to use.");
+            }
+            String credentialId = config.getVaultCredentialId();
+            if (StringUtils.isBlank(credentialId)) {
+                throw new VaultPluginException("The credential id was not configured - please specify the credentials to use.");
+            }
+            start = System.nanoTime();
+            VaultCredential credential = VaultCredentialCache.get().lookup(run.getParent(), credentialId);
+            timing.record(VaultTimingAction.CREDENTIALS, start);
+
+            VaultAccessor vaultAccessor = step.newAccessor();
+            start = System.nanoTime();
+            vaultAccessor.init(url);
+            vaultAccessor.auth(credential);
+            timing.record(VaultTimingAction.AUTH, start);
+            List<LogicalResponse> responses = VaultSecretReader.readAll(vaultAccessor, step.vaultSecrets, timing);
+            VaultAuthToken authToken = vaultAccessor.getToken();
+            VaultLeaseManager.get().track(url, credential, authToken, responses);
+            List<LogicalResponse> unwrappedLeases = new ArrayList<>();
+            VaultSecretBindings bindings;
+            try {
+                bindings = VaultSecretBindings.bind(url, step.vaultSecrets, responses, workspace, unwrappedLeases);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                new RevokeLeases(url, credential.getId(), leaseIds(responses, unwrappedLeases), authToken).revoke(run);
+                throw e;
+            }
+            VaultLeaseManager.get().track(url, credential, authToken, unwrappedLeases);
+            RevokeLeases revokeLeases = new RevokeLeases(url, credential.getId(), leaseIds(responses, unwrappedLeases), authToken);
+            revokeLeases.secretFilesDir = bindings.getFilesDir();
+
+            StepContext context = getContext();
+            synchronized (this) {
+                if (stopped) {
+                    // the leases were taken out anyway
+                    revokeLeases.cleanUp(run, workspace);
+                    return;
+                }
+                context.newBodyInvoker()
+                        .withContexts(
+                                EnvironmentExpander.merge(context.get(EnvironmentExpander.class), new Overrides(bindings.getEnv())),
+                                BodyInvoker.mergeConsoleLogFilters(context.get(ConsoleLogFilter.class),
+                                        new MaskingConsoleLogFilter(run.getCharset().name(), bindings.getValuesToMask())))
+                        .withCallback(revokeLeases)
+                        .start();
+                bodyStarted = true;
+            }
+        }
+
+        @Override
+        public void stop(@Nonnull Throwable cause) throws Exception {
+            synchronized (this) {
+                stopped = true;
+                if (fetch != null && !bodyStarted) {
+                    fetch.cancel(true);
+                }
+            }
+            getContext().onFailure(cause);
+        }
+
+        private static List<String> leaseIds(List<LogicalResponse> responses, List<LogicalResponse> unwrappedLeases) {
+            List<String> leaseIds = VaultBuildWrapper.retrieveLeaseIds(responses);
+            leaseIds.addAll(VaultBuildWrapper.retrieveLeaseIds(unwrappedLeases));
+            return leaseIds;
+        }
+
+        private synchronized boolean isStopped() {
+            return stopped;
+        }
+
+        @Override
+        public void onResume() {
+            if (!bodyStarted) {
+                getContext().onFailure(new AbortException("Jenkins restarted while reading secrets from Vault"));
+            }
+        }
+    }
+
+    private static final class Overrides extends EnvironmentExpander {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, String> overrides;
+
+        Overrides(Map<String, String> overrides) {
+            this.overrides = overrides;
+        }
+
+        @Override
+        public void expand(@Nonnull EnvVars env) throws IOException, InterruptedException {
+            env.overrideAll(overrides);
+        }
+    }
+
+    /**
+     * Deletes the secret files and queues the leases for revocation once the body is done, without waiting for Vault.
+     */
+    private static final class RevokeLeases extends BodyExecutionCallback.TailCall {
+        private static final long serialVersionUID = 1L;
+
+        private final String url;
+        private final String credentialId;
+        private final List<String> leaseIds;
+        private transient VaultAuthToken authToken;
+        private String secretFilesDir;
+
+        RevokeLeases(String url, String credentialId, List<String> leaseIds, @CheckForNull VaultAuthToken authToken) {
+            this.url = url;
+            this.credentialId = credentialId;
+            this.leaseIds = leaseIds;
+            this.authToken = authToken;
+        }
+
+        @Override
+        protected void finished(StepContext context) throws Exception {
+            cleanUp(context.get(Run.class), context.get(FilePath.class));
+        }
+
+        void cleanUp(Run<?, ?> run, @CheckForNull FilePath workspace) throws IOException, InterruptedException {
+            try {
+                if (secretFilesDir != null) {
+                    VaultSecretFiles.deleteDirectory(workspace, secretFilesDir);
+                }
+            } finally {
+                revoke(run);
+            }
+        }
+
+        void revoke(Run<?, ?> run) {
+            if (leaseIds.isEmpty()) {
+                return;
+            }
+            VaultLeaseRevoker.get().revoke(url, credentialId, run.getParent().getFullName(), leaseIds, authToken,
+                    VaultTimingAction.of(run));
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends StepDescriptor {
+        @Override
+        public String getFunctionName() {
+            return "withVault";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Vault Plugin";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return true;
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Collections.unmodifiableSet(new HashSet<Class<?>>(Arrays.asList(Run.class, TaskListener.class)));
+        }
+    }
+}
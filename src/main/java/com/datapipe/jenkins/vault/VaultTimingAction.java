@@ -0,0 +1,134 @@
+package com.datapipe.jenkins.vault;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+/**
+ * How long a build spent on Vault: configuration resolution, credential lookup, login, each path read and
+ * revocation.
+ * <p>
+ * Kept on every build, so steps and durations are stored as two plain arrays, which is a few hundred bytes for
+ * a typical build.
+ */
+@ExportedBean
+public class VaultTimingAction implements RunAction2 {
+    public static final String CONFIGURATION = "configuration";
+    public static final String CREDENTIALS = "credentials";
+    public static final String AUTH = "auth";
+    public static final String READ = "read ";
+    public static final String PREFETCH_WAIT = "prefetch wait";
+    public static final String REVOKE = "revoke";
+
+    private String[] steps = new String[0];
+
+    private int[] millis = new int[0];
+
+    /** Guards adding the action, without locking the build other code may synchronize on. */
+    private static final Object ADD_LOCK = new Object();
+
+    private transient Run<?, ?> run;
+
+    /**
+     * @return the action of the given build, added if it does not exist yet
+     */
+    public static VaultTimingAction of(Run<?, ?> build) {
+        synchronized (ADD_LOCK) {
+            VaultTimingAction action = build.getAction(VaultTimingAction.class);
+            if (action == null) {
+                action = new VaultTimingAction();
+                build.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    /**
+     * Records a step that started at the given {@link System#nanoTime()} and ends now.
+     */
+    public void record(String step, long startNanos) {
+        add(step, (int) Math.min(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), Integer.MAX_VALUE));
+    }
+
+    synchronized void add(String step, int durationMillis) {
+        steps = Arrays.copyOf(steps, steps.length + 1);
+        millis = Arrays.copyOf(millis, millis.length + 1);
+        steps[steps.length - 1] = step;
+        millis[millis.length - 1] = durationMillis;
+    }
+
+    @Exported
+    public synchronized List<Timing> getTimings() {
+        List<Timing> timings = new ArrayList<>(steps.length);
+        for (int i = 0; i < steps.length; i++) {
+            timings.add(new Timing(steps[i], millis[i]));
+        }
+        return timings;
+    }
+
+    @Exported
+    public synchronized long getTotalMillis() {
+        long total = 0;
+        for (int duration : millis) {
+            total += duration;
+        }
+        return total;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        run = r;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        run = r;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Vault Timing";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "vaultTiming";
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static final class Timing {
+        private final String step;
+        private final int millis;
+
+        Timing(String step, int millis) {
+            this.step = step;
+            this.millis = millis;
+        }
+
+        @Exported
+        public String getStep() {
+            return step;
+        }
+
+        @Exported
+        public int getMillis() {
+            return millis;
+        }
+    }
+}
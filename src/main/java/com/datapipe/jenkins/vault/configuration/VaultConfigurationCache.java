@@ -0,0 +1,162 @@
+package com.datapipe.jenkins.vault.configuration;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.datapipe.jenkins.vault.metrics.VaultMetrics;
+import com.google.common.annotations.VisibleForTesting;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+
+/**
+ * Controller-wide cache of the configuration the {@link VaultConfigResolver}s resolve for a job, so builds do not
+ * walk their folder ancestry again.
+ * <p>
+ * Entries are kept per job, as {@link VaultConfigResolver#forJob(Item)} may look at more than the parent of a job.
+ * Changing the {@link FolderVaultConfiguration} of a folder, saving the {@link GlobalVaultConfiguration} or moving an
+ * item drops the whole cache, as it may affect every job below it. Other folder saves, like those made throughout
+ * multibranch indexing, leave it alone.
+ */
+public class VaultConfigurationCache {
+    private static final VaultConfigurationCache INSTANCE = new VaultConfigurationCache();
+
+    /** Weak keys, so deleted jobs do not linger. */
+    private final Map<Item, Resolved> entries = new WeakHashMap<>();
+
+    /**
+     * The folder configuration each folder had when it was last saved. A folder property is replaced, not modified,
+     * when a folder is reconfigured, so comparing instances tells whether a save changed it.
+     */
+    private final Map<Item, VaultConfiguration> folderConfigurations = new WeakHashMap<>();
+
+    /** Incremented on every invalidation, so a resolution racing with it is not cached. */
+    private long generation;
+
+    public static VaultConfigurationCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return a copy of the configuration resolved for the given job, {@code null} if no resolver has one
+     */
+    @CheckForNull
+    public VaultConfiguration forJob(@Nonnull Item job) {
+        return resolve(job, ExtensionList.lookup(VaultConfigResolver.class));
+    }
+
+    @VisibleForTesting
+    VaultConfiguration resolve(@Nonnull Item job, Iterable<? extends VaultConfigResolver> resolvers) {
+        long resolvingGeneration;
+        synchronized (this) {
+            Resolved resolved = entries.get(job);
+            if (resolved != null) {
+                VaultMetrics.get().recordCacheLookup(VaultMetrics.CONFIGURATION_CACHE, true);
+                return resolved.copy();
+            }
+            resolvingGeneration = generation;
+        }
+        VaultMetrics.get().recordCacheLookup(VaultMetrics.CONFIGURATION_CACHE, false);
+
+        long start = System.nanoTime();
+        VaultConfiguration configuration = null;
+        for (VaultConfigResolver resolver : resolvers) {
+            if (configuration != null) {
+                configuration = configuration.mergeWithParent(resolver.forJob(job));
+            } else {
+                configuration = resolver.forJob(job);
+            }
+        }
+        Resolved resolved = new Resolved(configuration == null ? null : new VaultConfiguration(configuration));
+        VaultMetrics.get().histogram(VaultMetrics.CONFIGURATION_RESOLUTION)
+                .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        synchronized (this) {
+            if (generation == resolvingGeneration) {
+                entries.put(job, resolved);
+            }
+        }
+        return resolved.copy();
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+    }
+
+    /**
+     * Drops the cache if the folder configuration differs from the one the folder had when it was last saved. The
+     * first save seen for a folder always does, as its previous configuration is unknown.
+     */
+    @VisibleForTesting
+    synchronized void folderSaved(@Nonnull Item folder, @CheckForNull VaultConfiguration configuration) {
+        boolean known = folderConfigurations.containsKey(folder);
+        VaultConfiguration previous = folderConfigurations.put(folder, configuration);
+        if (!known || previous != configuration) {
+            invalidateAll();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Resolved {
+        private final VaultConfiguration configuration;
+
+        Resolved(VaultConfiguration configuration) {
+            this.configuration = configuration;
+        }
+
+        VaultConfiguration copy() {
+            return configuration == null ? null : new VaultConfiguration(configuration);
+        }
+    }
+
+    /**
+     * Folder properties and the global configuration are changed by saving their owner.
+     */
+    @Extension
+    public static class ConfigurationSaveListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof AbstractFolder) {
+                AbstractFolder<?> folder = (AbstractFolder<?>) o;
+                FolderVaultConfiguration property = folder.getProperties().get(FolderVaultConfiguration.class);
+                get().folderSaved(folder, property == null ? null : property.getConfiguration());
+            } else if (o instanceof GlobalVaultConfiguration) {
+                get().invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Moving or renaming an item changes its ancestry, and that of everything below it.
+     */
+    @Extension
+    public static class FolderListener extends ItemListener {
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().invalidateAll();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof ItemGroup) {
+                get().invalidateAll();
+            }
+        }
+    }
+}
@@ -15,6 +15,11 @@ public abstract class AbstractVaultTokenCredential extends BaseStandardCredentia
 
     @Override
     public Vault authorizeWithVault(Vault vault, VaultConfig config) {
-        return new Vault(config.token(getToken()));
+        return new Vault(config.token(authenticate(vault, config).getToken()));
+    }
+
+    @Override
+    public VaultAuthToken authenticate(Vault vault, VaultConfig config) {
+        return new VaultAuthToken(getToken());
     }
 }
@@ -0,0 +1,157 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+
+import com.bettercloud.vault.json.Json;
+import com.bettercloud.vault.json.JsonValue;
+import com.bettercloud.vault.json.ParseException;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Identity tokens (signed JWTs) of the controller's GCP service account, fetched from the metadata server and reused
+ * until shortly before they expire.
+ * <p>
+ * Tokens only depend on their audience, so all {@link VaultGCPCredential}s with the same audience share one. When
+ * a token is due, a single request fetches the next one and concurrent logins wait for it. The metadata server is
+ * {@code http://metadata} unless set through the {@code GCE_METADATA_HOST} environment variable or the
+ * {@code com.datapipe.jenkins.vault.credentials.GoogleIdentityTokenCache.metadataHost} system property.
+ */
+final class GoogleIdentityTokenCache {
+    /** Tokens are refreshed this long before they expire, so they are still valid when Vault checks them. */
+    static final long REFRESH_MARGIN = Long.getLong(GoogleIdentityTokenCache.class.getName() + ".refreshMarginMillis", TimeUnit.MINUTES.toMillis(5));
+
+    private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+
+    private static final String IDENTITY_PATH = "/computeMetadata/v1/instance/service-accounts/default/identity";
+
+    private static final GoogleIdentityTokenCache INSTANCE = new GoogleIdentityTokenCache("http://" + defaultMetadataHost());
+
+    private final String metadataUrl;
+
+    private final ConcurrentMap<String, Token> tokens = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, FutureTask<Token>> fetching = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    GoogleIdentityTokenCache(String metadataUrl) {
+        this.metadataUrl = metadataUrl;
+    }
+
+    static GoogleIdentityTokenCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return a valid identity token for the given audience
+     */
+    String jwt(final String audience) throws IOException {
+        Token token = tokens.get(audience);
+        if (token != null && !token.isDue()) {
+            return token.jwt;
+        }
+        FutureTask<Token> fetch = new FutureTask<>(new Callable<Token>() {
+            @Override
+            public Token call() throws IOException {
+                Token fetched = fetch(audience);
+                tokens.put(audience, fetched);
+                return fetched;
+            }
+        });
+        FutureTask<Token> running = fetching.putIfAbsent(audience, fetch);
+        if (running == null) {
+            try {
+                fetch.run();
+            } finally {
+                fetching.remove(audience, fetch);
+            }
+            running = fetch;
+        }
+        try {
+            return running.get().jwt;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the GCP identity token", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * Drops the token for the given audience, e.g. because Vault rejected it.
+     */
+    void invalidate(String audience) {
+        tokens.remove(audience);
+    }
+
+    private Token fetch(String audience) throws IOException {
+        URL url = new URL(metadataUrl + IDENTITY_PATH + "?audience=" + URLEncoder.encode(audience, "UTF-8") + "&format=full");
+        URLConnection connection = url.openConnection();
+        if (!(connection instanceof HttpURLConnection)) {
+            throw new IOException("not an http connection to the GCP metadata server: " + url);
+        }
+        HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        httpConnection.setConnectTimeout(TIMEOUT);
+        httpConnection.setReadTimeout(TIMEOUT);
+        httpConnection.setRequestProperty("Metadata-Flavor", "Google");
+        try (InputStream in = httpConnection.getInputStream()) {
+            String jwt = IOUtils.toString(in, StandardCharsets.UTF_8).trim();
+            return new Token(jwt, expiresAt(jwt));
+        }
+    }
+
+    /**
+     * @return the {@code exp} claim of the given JWT in milliseconds, or now if there is none, so it is not reused
+     */
+    @VisibleForTesting
+    static long expiresAt(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if (parts.length < 2) {
+            return System.currentTimeMillis();
+        }
+        try {
+            String claims = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+            JsonValue exp = Json.parse(claims).asObject().get("exp");
+            return exp != null && exp.isNumber() ? TimeUnit.SECONDS.toMillis(exp.asLong()) : System.currentTimeMillis();
+        } catch (IllegalArgumentException | ParseException | UnsupportedOperationException e) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    private static String defaultMetadataHost() {
+        String host = System.getProperty(GoogleIdentityTokenCache.class.getName() + ".metadataHost");
+        if (host == null) {
+            host = System.getenv("GCE_METADATA_HOST");
+        }
+        return host == null || host.isEmpty() ? "metadata" : host;
+    }
+
+    private static final class Token {
+        private final String jwt;
+        private final long expiresAt;
+
+        Token(String jwt, long expiresAt) {
+            this.jwt = jwt;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isDue() {
+            return System.currentTimeMillis() >= expiresAt - REFRESH_MARGIN;
+        }
+    }
+}
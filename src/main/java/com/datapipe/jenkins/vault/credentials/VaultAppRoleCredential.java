@@ -37,13 +37,16 @@ public class VaultAppRoleCredential extends BaseStandardCredentials implements V
 
     @Override
     public Vault authorizeWithVault(Vault vault, VaultConfig config) {
-        String token = null;
+        return new Vault(config.token(authenticate(vault, config).getToken()));
+    }
+
+    @Override
+    public VaultAuthToken authenticate(Vault vault, VaultConfig config) {
         try {
-            token = vault.auth().loginByAppRole("approle", roleId, Secret.toString(secretId)).getAuthClientToken();
+            return VaultAuthToken.fromAuthResponse(vault.auth().loginByAppRole("approle", roleId, Secret.toString(secretId)));
         } catch (VaultException e) {
             throw new VaultPluginException("could not log in into vault", e);
         }
-        return new Vault(config.token(token));
     }
 
     @Extension
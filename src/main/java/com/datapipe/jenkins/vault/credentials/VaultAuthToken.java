@@ -0,0 +1,99 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.bettercloud.vault.response.AuthResponse;
+
+/**
+ * A Vault client token together with the lease information Vault handed out for it.
+ * <p>
+ * Tokens are only ever held in memory; this class is intentionally not {@link java.io.Serializable}
+ * and does not override {@link Object#toString()}.
+ */
+public class VaultAuthToken {
+    private final String token;
+
+    private final long leaseDuration;
+
+    private final boolean renewable;
+
+    private final List<String> policies;
+
+    private final long issuedAt;
+
+    /**
+     * Creates a token whose lifetime is not known to the plugin (e.g. a token configured by the user).
+     * Such tokens are never considered expiring.
+     */
+    public VaultAuthToken(String token) {
+        this(token, 0, false);
+    }
+
+    public VaultAuthToken(String token, long leaseDuration, boolean renewable) {
+        this(token, leaseDuration, renewable, null);
+    }
+
+    public VaultAuthToken(String token, long leaseDuration, boolean renewable, List<String> policies) {
+        this.token = token;
+        this.leaseDuration = leaseDuration;
+        this.renewable = renewable;
+        this.policies = policies == null ? Collections.<String>emptyList() : Collections.unmodifiableList(policies);
+        this.issuedAt = System.currentTimeMillis();
+    }
+
+    public static VaultAuthToken fromAuthResponse(AuthResponse response) {
+        return new VaultAuthToken(response.getAuthClientToken(), response.getAuthLeaseDuration(), response.isAuthRenewable(),
+                response.getAuthPolicies());
+    }
+
+    /**
+     * @return a new token with the lease information of a renewal response, keeping this token if the
+     * response does not carry one.
+     */
+    public VaultAuthToken renewedBy(AuthResponse response) {
+        String renewedToken = StringUtils.defaultIfBlank(response.getAuthClientToken(), getToken());
+        List<String> renewedPolicies = response.getAuthPolicies() == null || response.getAuthPolicies().isEmpty()
+                ? policies : response.getAuthPolicies();
+        return new VaultAuthToken(renewedToken, response.getAuthLeaseDuration(), response.isAuthRenewable(), renewedPolicies);
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the policies attached to the token, empty if not known to the plugin
+     */
+    public List<String> getPolicies() {
+        return policies;
+    }
+
+    /**
+     * @return the lease duration in seconds, {@code 0} if the token does not expire or its lifetime is unknown.
+     */
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public boolean isRenewable() {
+        return renewable;
+    }
+
+    public long getExpiresAt() {
+        return leaseDuration > 0 ? issuedAt + leaseDuration * 1000 : Long.MAX_VALUE;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= getExpiresAt();
+    }
+
+    /**
+     * @return {@code true} once two thirds of the lease have passed, which is when the token should be renewed.
+     */
+    public boolean isNearExpiry() {
+        return leaseDuration > 0 && System.currentTimeMillis() >= issuedAt + leaseDuration * 1000 * 2 / 3;
+    }
+}
@@ -4,9 +4,12 @@ import javax.annotation.Nonnull;
 
 import com.bettercloud.vault.Vault;
 import com.bettercloud.vault.VaultConfig;
+import com.bettercloud.vault.VaultException;
 import com.cloudbees.plugins.credentials.CredentialsNameProvider;
 import com.cloudbees.plugins.credentials.NameWith;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.datapipe.jenkins.vault.VaultClientFactory;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
 
 import java.io.Serializable;
 
@@ -14,6 +17,31 @@ import java.io.Serializable;
 public interface VaultCredential extends StandardCredentials, Serializable {
     Vault authorizeWithVault(Vault vault, VaultConfig config);
 
+    /**
+     * Logs in to Vault.
+     * <p>
+     * Credentials that know the lease of the token Vault issues should override this, so the plugin can renew and
+     * share the token. By default, {@link #authorizeWithVault(Vault, VaultConfig)} is called on a fresh configuration
+     * for the same server and the token it sets is used without lease information, i.e. it is never renewed.
+     *
+     * @param vault an unauthenticated Vault client pointing to the server to log in to
+     * @param config the configuration of that client
+     * @return the token issued by Vault
+     */
+    default VaultAuthToken authenticate(Vault vault, VaultConfig config) {
+        VaultConfig freshConfig;
+        try {
+            freshConfig = VaultClientFactory.newConfig(config.getAddress());
+        } catch (VaultException e) {
+            throw new VaultPluginException("failed to connect to vault", e);
+        }
+        authorizeWithVault(vault, freshConfig);
+        if (freshConfig.getToken() == null) {
+            throw new VaultPluginException("credential " + getId() + " did not log in into vault");
+        }
+        return new VaultAuthToken(freshConfig.getToken());
+    }
+
     class NameProvider extends CredentialsNameProvider<VaultCredential> {
 
       @Nonnull
@@ -0,0 +1,165 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsUnavailableException;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.cloudbees.plugins.credentials.matchers.IdMatcher;
+import com.datapipe.jenkins.vault.metrics.VaultMetrics;
+import com.google.common.annotations.VisibleForTesting;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.ModelObject;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+
+/**
+ * Controller-wide cache of {@link VaultCredential}s found by id, so builds do not scan all credentials visible
+ * to their job again.
+ * <p>
+ * Entries are kept per {@link Item} or {@link ItemGroup} the lookup was made for, as credentials providers may
+ * return different credentials to the jobs of a folder. Saving a credentials store drops the whole cache. Credentials from providers that do not persist through Jenkins are picked up
+ * once an entry is older than {@link #TTL}. Unknown ids are not cached, so a credential added later is found
+ * right away.
+ */
+public class VaultCredentialCache {
+    static final long TTL = Long.getLong(VaultCredentialCache.class.getName() + ".ttlMillis", TimeUnit.MINUTES.toMillis(5));
+
+    private static final VaultCredentialCache INSTANCE = new VaultCredentialCache();
+
+    /** Weak keys, so deleted jobs and folders do not linger. */
+    private final Map<ModelObject, Map<String, Entry>> entries = new WeakHashMap<>();
+
+    /** Incremented on every invalidation, so a lookup racing with it is not cached. */
+    private long generation;
+
+    public static VaultCredentialCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the credential with the given id visible to the given item
+     * @throws CredentialsUnavailableException if there is none
+     */
+    @Nonnull
+    public VaultCredential lookup(@Nonnull final Item item, String id) {
+        return lookup(item, id, new Lookup() {
+            @Override
+            public List<VaultCredential> credentials() {
+                return CredentialsProvider.lookupCredentials(VaultCredential.class, item, ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+            }
+        });
+    }
+
+    /**
+     * @return the credential with the given id visible in the given item group
+     * @throws CredentialsUnavailableException if there is none
+     */
+    @Nonnull
+    public VaultCredential lookup(@Nonnull final ItemGroup group, String id) {
+        return lookup(group, id, new Lookup() {
+            @Override
+            public List<VaultCredential> credentials() {
+                return CredentialsProvider.lookupCredentials(VaultCredential.class, group, ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+            }
+        });
+    }
+
+    @VisibleForTesting
+    VaultCredential lookup(ModelObject context, String id, Lookup lookup) {
+        long lookupGeneration;
+        synchronized (this) {
+            Map<String, Entry> byId = entries.get(context);
+            Entry entry = byId == null ? null : byId.get(id);
+            if (entry != null && System.currentTimeMillis() - entry.resolvedAt < TTL) {
+                VaultMetrics.get().recordCacheLookup(VaultMetrics.CREDENTIAL_CACHE, true);
+                return entry.credential;
+            }
+            lookupGeneration = generation;
+        }
+        VaultMetrics.get().recordCacheLookup(VaultMetrics.CREDENTIAL_CACHE, false);
+
+        VaultCredential credential = CredentialsMatchers.firstOrNull(lookup.credentials(), new IdMatcher(id));
+        if (credential == null) {
+            throw new CredentialsUnavailableException(id);
+        }
+
+        synchronized (this) {
+            if (generation == lookupGeneration) {
+                Map<String, Entry> byId = entries.get(context);
+                if (byId == null) {
+                    byId = new HashMap<>();
+                    entries.put(context, byId);
+                }
+                byId.put(id, new Entry(credential));
+            }
+        }
+        return credential;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+    }
+
+    @VisibleForTesting
+    interface Lookup {
+        List<VaultCredential> credentials();
+    }
+
+    private static final class Entry {
+        private final VaultCredential credential;
+        private final long resolvedAt = System.currentTimeMillis();
+
+        Entry(VaultCredential credential) {
+            this.credential = credential;
+        }
+    }
+
+    /**
+     * Credentials are updated or deleted by saving the store holding them.
+     */
+    @Extension
+    public static class CredentialsStoreListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider || o instanceof AbstractFolder) {
+                get().invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Moving or renaming an item changes the credentials visible to it and below it.
+     */
+    @Extension
+    public static class FolderListener extends ItemListener {
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().invalidateAll();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof ItemGroup) {
+                get().invalidateAll();
+            }
+        }
+    }
+}
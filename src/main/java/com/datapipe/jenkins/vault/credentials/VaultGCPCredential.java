@@ -15,15 +15,7 @@ import com.datapipe.jenkins.vault.exception.VaultPluginException;
 import hudson.Extension;
 import hudson.util.Secret;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.nio.charset.StandardCharsets;
 
 public class VaultGCPCredential extends BaseStandardCredentials implements VaultCredential {
     private final @Nonnull String role;
@@ -40,22 +32,31 @@ public class VaultGCPCredential extends BaseStandardCredentials implements Vault
         return role;
     }
 
+    public String getAudience() {
+        return audience;
+    }
+
     @Override
     public Vault authorizeWithVault(Vault vault, VaultConfig config) {
-        String token = null;
-        String jwt = null;
-	try {
-	    jwt = retrieveGoogleJWT();
-	} catch (URISyntaxException | IOException e) {
+        return new Vault(config.token(authenticate(vault, config).getToken()));
+    }
+
+    @Override
+    public VaultAuthToken authenticate(Vault vault, VaultConfig config) {
+        String jwt;
+        try {
+            jwt = GoogleIdentityTokenCache.get().jwt(audience);
+        } catch (IOException e) {
             throw new VaultPluginException("could not get JWT from GCP metdata", e);
-	}
+        }
 
         try {
-            token = vault.auth().loginByGCP(role, jwt).getAuthClientToken();
+            return VaultAuthToken.fromAuthResponse(vault.auth().loginByGCP(role, jwt));
         } catch (VaultException e) {
+            // the next login fetches a new JWT, in case this one was the problem
+            GoogleIdentityTokenCache.get().invalidate(audience);
             throw new VaultPluginException("could not log in into vault", e);
         }
-        return new Vault(config.token(token));
     }
 
     @Extension
@@ -66,42 +67,4 @@ public class VaultGCPCredential extends BaseStandardCredentials implements Vault
         }
 
     }
-
-    private String retrieveGoogleJWT() throws URISyntaxException, IOException {
-	final String HTTP_SCHEME = "http";
-	final String NO_USER_INFO = null;
-	final String METADATA_HOST_ADDRESS = "metadata";
-	final int UNSPECIFIED_PORT = -1;
-	final String METADATA_PATH = "/computeMetadata/v1/instance/"
-	+ "service-accounts/default/identity";
-	final String FRAGMENT = null;
-
-	// TODO: would like to pull the get the audience from the plugin config
-	// instead of specifying it each Vault GCP credential
-	String query = "audience=" + audience + "&format=full";
-	URL website = new URI(HTTP_SCHEME, NO_USER_INFO, METADATA_HOST_ADDRESS, UNSPECIFIED_PORT,
-		METADATA_PATH, query, FRAGMENT).toURL();
-	URLConnection connection = website.openConnection();
-	HttpURLConnection httpConnection = safelyCastToHttpUrlConnection(connection);
-	httpConnection.setRequestProperty("Metadata-Flavor", "Google");
-
-	return download(httpConnection);
-    }
-
-    private static HttpURLConnection safelyCastToHttpUrlConnection(URLConnection connection) {
-        if (connection instanceof HttpURLConnection) {
-            return (HttpURLConnection) connection;
-        } else {
-            throw new RuntimeException("We do not have Http connection, but we used http schema");
-        }
-    }
-
-    private static String download(URLConnection connection) throws IOException {
-        try (BufferedReader in = new BufferedReader(
-            new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-          StringBuilder sb = new StringBuilder();
-          in.lines().forEachOrdered(sb::append);
-          return sb.toString();
-        }
-    }
 }
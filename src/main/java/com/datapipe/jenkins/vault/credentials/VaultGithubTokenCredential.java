@@ -35,13 +35,16 @@ public class VaultGithubTokenCredential extends BaseStandardCredentials implemen
 
     @Override
     public Vault authorizeWithVault(Vault vault, VaultConfig config) {
-        String token = null;
+        return new Vault(config.token(authenticate(vault, config).getToken()));
+    }
+
+    @Override
+    public VaultAuthToken authenticate(Vault vault, VaultConfig config) {
         try {
-            token = vault.auth().loginByGithub(Secret.toString(accessToken)).getAuthClientToken();
+            return VaultAuthToken.fromAuthResponse(vault.auth().loginByGithub(Secret.toString(accessToken)));
         } catch (VaultException e) {
             throw new VaultPluginException("could not log in into vault", e);
         }
-        return new Vault(config.token(token));
     }
 
     @Extension
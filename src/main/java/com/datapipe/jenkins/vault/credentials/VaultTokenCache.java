@@ -0,0 +1,195 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bettercloud.vault.Vault;
+import com.bettercloud.vault.VaultConfig;
+import com.bettercloud.vault.VaultException;
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.datapipe.jenkins.vault.VaultClientFactory;
+import com.datapipe.jenkins.vault.metrics.VaultMetrics;
+import com.google.common.annotations.VisibleForTesting;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.listeners.SaveableListener;
+
+/**
+ * Controller-wide cache of tokens obtained by logging in with a {@link VaultCredential}, so that concurrent
+ * builds sharing a credential do not each log in again.
+ * <p>
+ * Entries are keyed by Vault URL and credential id; the credential instance acts as its version, as updating
+ * a credential replaces the instance held by its store. Only tokens with a known lease are cached; tokens whose
+ * lifetime the plugin does not know (e.g. {@link VaultTokenFileCredential}) are cheap to obtain and may change
+ * outside of Jenkins.
+ */
+public class VaultTokenCache {
+    private static final Logger LOGGER = Logger.getLogger(VaultTokenCache.class.getName());
+
+    private static final VaultTokenCache INSTANCE = new VaultTokenCache();
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Key, Object> locks = new ConcurrentHashMap<>();
+
+    public static VaultTokenCache get() {
+        return INSTANCE;
+    }
+
+    public VaultAuthToken authenticate(String vaultUrl, VaultCredential credential, Vault vault, VaultConfig config) {
+        Key key = new Key(vaultUrl, credential.getId());
+        VaultAuthToken token = usableToken(key, credential);
+        VaultMetrics.get().recordCacheLookup(VaultMetrics.TOKEN_CACHE, token != null);
+        if (token != null) {
+            return token;
+        }
+        synchronized (lockFor(key)) {
+            token = usableToken(key, credential);
+            if (token != null) {
+                return token;
+            }
+            token = credential.authenticate(vault, config);
+            if (token.getLeaseDuration() > 0) {
+                entries.put(key, new Entry(credential, token));
+            } else {
+                entries.remove(key);
+            }
+            return token;
+        }
+    }
+
+    /**
+     * Drops all tokens. The locks are kept: a login already holding one must still exclude logins for the same key.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    @VisibleForTesting
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Renews cached tokens that are near their expiry and drops those that cannot be renewed.
+     */
+    @VisibleForTesting
+    void renewExpiring() {
+        for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+            Key key = e.getKey();
+            VaultAuthToken token = e.getValue().token;
+            if (!token.isNearExpiry()) {
+                continue;
+            }
+            if (!token.isRenewable() || token.isExpired()) {
+                entries.remove(key, e.getValue());
+                continue;
+            }
+            try {
+                VaultConfig config = VaultClientFactory.newConfig(key.vaultUrl).token(token.getToken());
+                VaultAuthToken renewed = token.renewedBy(new Vault(config).auth().renewSelf());
+                entries.replace(key, e.getValue(), new Entry(e.getValue().credential, renewed));
+            } catch (VaultException ex) {
+                LOGGER.log(Level.FINE, "could not renew cached vault token for credential " + key.credentialId, ex);
+                entries.remove(key, e.getValue());
+            }
+        }
+    }
+
+    private VaultAuthToken usableToken(Key key, VaultCredential credential) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.credential != credential || entry.token.isNearExpiry()) {
+            return null;
+        }
+        return entry.token;
+    }
+
+    private Object lockFor(Key key) {
+        Object lock = locks.get(key);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    private static final class Key {
+        private final String vaultUrl;
+        private final String credentialId;
+
+        Key(String vaultUrl, String credentialId) {
+            this.vaultUrl = vaultUrl;
+            this.credentialId = credentialId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return vaultUrl.equals(other.vaultUrl) && credentialId.equals(other.credentialId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * vaultUrl.hashCode() + credentialId.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final VaultCredential credential;
+        private final VaultAuthToken token;
+
+        Entry(VaultCredential credential, VaultAuthToken token) {
+            this.credential = credential;
+            this.token = token;
+        }
+    }
+
+    @Extension
+    public static class Renewer extends AsyncPeriodicWork {
+        public Renewer() {
+            super("Vault token renewal");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.SECONDS.toMillis(30);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException, InterruptedException {
+            get().renewExpiring();
+        }
+    }
+
+    /**
+     * Credentials are updated or deleted by saving the store holding them.
+     */
+    @Extension
+    public static class CredentialsStoreListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider || o instanceof AbstractFolder) {
+                get().invalidateAll();
+            }
+        }
+    }
+}
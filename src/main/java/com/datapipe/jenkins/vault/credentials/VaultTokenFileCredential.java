@@ -2,24 +2,41 @@ package com.datapipe.jenkins.vault.credentials;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
-import org.apache.commons.io.FileUtils;
-import org.jenkinsci.remoting.RoleChecker;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.google.common.annotations.VisibleForTesting;
 
 import hudson.Extension;
-import hudson.FilePath;
-import hudson.remoting.VirtualChannel;
 
+/**
+ * A token read from a file on the controller, usually kept up to date by a sidecar.
+ * <p>
+ * The token is held in memory and only read again once the modification time or size of the file changed, which is
+ * checked at most every {@link #CHECK_INTERVAL} milliseconds, so a rotation is picked up within that delay. As a
+ * rotation might keep both, the file is read again at least every {@link #MAX_AGE} milliseconds.
+ */
 public class VaultTokenFileCredential extends AbstractVaultTokenCredential {
+    static final long CHECK_INTERVAL = Long.getLong(VaultTokenFileCredential.class.getName() + ".checkIntervalMillis", 1000);
+
+    static final long MAX_AGE = Long.getLong(VaultTokenFileCredential.class.getName() + ".maxAgeMillis", TimeUnit.MINUTES.toMillis(1));
+
     private String filepath;
 
+    private transient String token;
+    private transient long lastModified;
+    private transient long length;
+    private transient long readAt;
+    private transient long checkedAt;
+
     @DataBoundConstructor
     public VaultTokenFileCredential(@CheckForNull CredentialsScope scope, @CheckForNull String id, @CheckForNull String description, @Nonnull String filepath) {
         super(scope, id, description);
@@ -29,24 +46,31 @@ public class VaultTokenFileCredential extends AbstractVaultTokenCredential {
 
     @Override
     public String getToken() {
-        FilePath file = new FilePath(new File(filepath));
+        return tokenAt(System.currentTimeMillis());
+    }
+
+    @VisibleForTesting
+    synchronized String tokenAt(long now) {
+        if (token != null && now - checkedAt < CHECK_INTERVAL) {
+            return token;
+        }
+        File file = new File(filepath);
+        long currentLastModified = file.lastModified();
+        long currentLength = file.length();
+        checkedAt = now;
+        if (token != null && currentLastModified == lastModified && currentLength == length && now - readAt < MAX_AGE) {
+            return token;
+        }
         try {
-            return file.act(new FilePath.FileCallable<String>() {
-                @Override
-                public void checkRoles(RoleChecker roleChecker) throws SecurityException {
-                    //not needed
-                }
-
-                @Override public String invoke(File f, VirtualChannel channel) {
-                    try {
-                        return FileUtils.readFileToString(f);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                }}).trim();
-        } catch (IOException| InterruptedException e) {
+            token = new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset()).trim();
+        } catch (IOException e) {
+            token = null;
             throw new VaultPluginException("Failed to read token from file", e);
         }
+        lastModified = currentLastModified;
+        length = currentLength;
+        readAt = now;
+        return token;
     }
 
     public String getFilepath(){
@@ -1,15 +1,13 @@
 package com.datapipe.jenkins.vault.log;
 
 import hudson.console.ConsoleLogFilter;
-import hudson.console.LineTransformationOutputStream;
 import hudson.model.Run;
-import org.apache.commons.lang.StringUtils;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
 import java.util.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /*The logic in this class is borrowed from https://github.com/jenkinsci/credentials-binding-plugin/*/
@@ -20,6 +18,10 @@ public class MaskingConsoleLogFilter extends ConsoleLogFilter
     private final String charsetName;
     private List<String> valuesToMask;
 
+    private transient SecretMatcher secretMatcher;
+
+    private transient int secretMatcherSourceSize;
+
 
     public MaskingConsoleLogFilter(final String charsetName,
                                    List<String> valuesToMask) {
@@ -30,29 +32,26 @@ public class MaskingConsoleLogFilter extends ConsoleLogFilter
     @Override
     public OutputStream decorateLogger(Run run,
                                        final OutputStream logger) throws IOException, InterruptedException {
-        return new LineTransformationOutputStream() {
-            Pattern p;
+        return new MaskingOutputStream(logger, this);
+    }
 
-            @Override
-            protected void eol(byte[] b, int len) throws IOException {
-                p = Pattern.compile(getPatternStringForSecrets(valuesToMask));
-                if (StringUtils.isBlank(p.pattern())){
-                    logger.write(b, 0, len);
-                    return;
-                }
-                Matcher m = p.matcher(new String(b, 0, len, charsetName));
-                if (m.find()) {
-                    logger.write(m.replaceAll("****").getBytes(charsetName));
-                } else {
-                    // Avoid byte → char → byte conversion unless we are actually doing something.
-                    logger.write(b, 0, len);
-                }
-            }
-        };
+    /**
+     * The values to mask are usually filled in after the logger has been decorated, so the matcher is rebuilt
+     * whenever their number changes - and only then.
+     */
+    synchronized SecretMatcher getSecretMatcher() throws UnsupportedEncodingException {
+        int size = valuesToMask == null ? 0 : valuesToMask.size();
+        if (secretMatcher == null || secretMatcherSourceSize != size) {
+            List<String> snapshot = valuesToMask == null ? Collections.<String>emptyList() : new ArrayList<>(valuesToMask);
+            secretMatcher = new SecretMatcher(snapshot, charsetName);
+            secretMatcherSourceSize = snapshot.size();
+        }
+        return secretMatcher;
     }
 
     /**
      * Utility method for turning a collection of secret strings into a single {@link String} for pattern compilation.
+     * The filter itself masks through a {@link SecretMatcher}, which gives the same result as this pattern.
      *
      * @param secrets A collection of secret strings
      * @return A {@link String} generated from that collection.
@@ -62,7 +61,8 @@ public class MaskingConsoleLogFilter extends ConsoleLogFilter
         StringBuilder b = new StringBuilder();
         List<String> sortedByLength = new ArrayList<String>(secrets.size());
         for (String secret : secrets) {
-        	if (secret != null) sortedByLength.add(secret);
+        	// an empty secret would match between every two characters
+        	if (secret != null && !secret.isEmpty()) sortedByLength.add(secret);
         }
         Collections.sort(sortedByLength, new Comparator<String>() {
             @Override
@@ -0,0 +1,153 @@
+package com.datapipe.jenkins.vault.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.datapipe.jenkins.vault.metrics.VaultMetrics;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Masks secrets in a stream of bytes, regardless of line breaks.
+ * <p>
+ * Bytes are passed on as soon as they can no longer be the start of a secret, so only a look-behind window
+ * shorter than the longest secret is held back - independent of how long lines are. Secrets spanning several
+ * lines (e.g. PEM keys) and several writes are masked as a whole.
+ */
+final class MaskingOutputStream extends OutputStream {
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final VaultMetrics.Counter BYTES_SCANNED = VaultMetrics.get().counter(VaultMetrics.MASKING_BYTES);
+    private static final VaultMetrics.Counter MATCHES = VaultMetrics.get().counter(VaultMetrics.MASKING_MATCHES);
+    private static final VaultMetrics.Counter NANOS = VaultMetrics.get().counter(VaultMetrics.MASKING_NANOS);
+
+    private final OutputStream out;
+    private final MaskingConsoleLogFilter filter;
+    private final byte[] single = new byte[1];
+
+    private SecretMatcher matcher;
+    private int state = SecretMatcher.ROOT;
+
+    /** Bytes received but not yet written. */
+    private byte[] pending = new byte[CHUNK_SIZE];
+    /** The length of the longest secret starting at each pending byte, {@code 0} if there is none. */
+    private int[] longestAt = new int[CHUNK_SIZE];
+    private int pendingLength;
+
+    MaskingOutputStream(OutputStream out, MaskingConsoleLogFilter filter) {
+        this.out = out;
+        this.filter = filter;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        updateMatcher();
+        if (matcher.getMaxLength() == 0 && pendingLength == 0) {
+            out.write(b, off, len);
+            return;
+        }
+        long start = System.nanoTime();
+        BYTES_SCANNED.add(len);
+        while (len > 0) {
+            int chunk = Math.min(len, CHUNK_SIZE);
+            scan(b, off, chunk);
+            // a secret still in progress started at most depth(state) bytes ago
+            emit(pendingLength - matcher.depth(state));
+            off += chunk;
+            len -= chunk;
+        }
+        NANOS.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Flushes the delegate. Bytes that may still turn out to be the beginning of a secret stay held back until more
+     * output arrives or the stream is closed.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        updateMatcher();
+        emit(pendingLength);
+        out.close();
+    }
+
+    /**
+     * @return the number of bytes held back
+     */
+    @VisibleForTesting
+    synchronized int getPendingLength() {
+        return pendingLength;
+    }
+
+    private void updateMatcher() throws IOException {
+        SecretMatcher current = filter.getSecretMatcher();
+        if (current == matcher) {
+            return;
+        }
+        matcher = current;
+        // the held back bytes have to be looked at again, they might be the start of one of the new secrets
+        byte[] held = Arrays.copyOf(pending, pendingLength);
+        pendingLength = 0;
+        state = SecretMatcher.ROOT;
+        scan(held, 0, held.length);
+    }
+
+    private void scan(byte[] b, int off, int len) {
+        ensureCapacity(pendingLength + len);
+        for (int i = 0; i < len; i++) {
+            int index = pendingLength++;
+            pending[index] = b[off + i];
+            longestAt[index] = 0;
+            state = matcher.next(state, b[off + i]);
+            for (int match = matcher.firstMatch(state); match != SecretMatcher.NONE; match = matcher.nextMatch(match)) {
+                int length = matcher.depth(match);
+                int start = index - length + 1;
+                // secrets starting in bytes that were already masked are skipped, just like the regex would do
+                if (start >= 0 && length > longestAt[start]) {
+                    longestAt[start] = length;
+                }
+            }
+        }
+    }
+
+    private void emit(int settled) throws IOException {
+        int i = 0;
+        while (i < settled) {
+            if (longestAt[i] > 0) {
+                byte[] replacement = matcher.getReplacement();
+                out.write(replacement, 0, replacement.length);
+                MATCHES.increment();
+                i += longestAt[i];
+            } else {
+                int start = i;
+                while (i < settled && longestAt[i] == 0) {
+                    i++;
+                }
+                out.write(pending, start, i - start);
+            }
+        }
+        if (i > 0) {
+            pendingLength -= i;
+            System.arraycopy(pending, i, pending, 0, pendingLength);
+            System.arraycopy(longestAt, i, longestAt, 0, pendingLength);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > pending.length) {
+            int newLength = Math.max(capacity, pending.length * 2);
+            pending = Arrays.copyOf(pending, newLength);
+            longestAt = Arrays.copyOf(longestAt, newLength);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.datapipe.jenkins.vault.log;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over the encoded bytes of a set of secrets.
+ * <p>
+ * {@link MaskingOutputStream} feeds the automaton byte by byte; at every position the longest secret starting there
+ * is masked, and scanning resumes after it. This is exactly what the alternation built by
+ * {@link MaskingConsoleLogFilter#getPatternStringForSecrets(Collection)} does, but the cost does not grow with the
+ * number of secrets.
+ */
+final class SecretMatcher {
+    static final int ROOT = 0;
+
+    static final int NONE = -1;
+
+    private final int[] rootTransitions = new int[256];
+    private final byte[][] childLabels;
+    private final int[][] childStates;
+    private final int[] failure;
+    private final int[] depth;
+    private final boolean[] terminal;
+    /** The longest proper suffix of a state that is a secret, or {@link #NONE}. */
+    private final int[] dictionarySuffix;
+    private final int maxLength;
+    private final byte[] replacement;
+
+    SecretMatcher(Collection<String> secrets, String charsetName) throws UnsupportedEncodingException {
+        List<TreeMap<Byte, Integer>> trie = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        List<Boolean> terminals = new ArrayList<>();
+        trie.add(new TreeMap<Byte, Integer>());
+        depths.add(0);
+        terminals.add(false);
+
+        int longest = 0;
+        if (secrets != null) {
+            for (String secret : secrets) {
+                // an empty secret would match between every two characters
+                if (secret == null || secret.isEmpty()) {
+                    continue;
+                }
+                byte[] encoded = secret.getBytes(charsetName);
+                int state = ROOT;
+                for (byte b : encoded) {
+                    Integer child = trie.get(state).get(b);
+                    if (child == null) {
+                        child = trie.size();
+                        trie.add(new TreeMap<Byte, Integer>());
+                        depths.add(depths.get(state) + 1);
+                        terminals.add(false);
+                        trie.get(state).put(b, child);
+                    }
+                    state = child;
+                }
+                terminals.set(state, true);
+                longest = Math.max(longest, encoded.length);
+            }
+        }
+
+        int size = trie.size();
+        childLabels = new byte[size][];
+        childStates = new int[size][];
+        depth = new int[size];
+        terminal = new boolean[size];
+        for (int s = 0; s < size; s++) {
+            TreeMap<Byte, Integer> children = trie.get(s);
+            childLabels[s] = new byte[children.size()];
+            childStates[s] = new int[children.size()];
+            int i = 0;
+            for (Map.Entry<Byte, Integer> child : children.entrySet()) {
+                childLabels[s][i] = child.getKey();
+                childStates[s][i] = child.getValue();
+                i++;
+            }
+            depth[s] = depths.get(s);
+            terminal[s] = terminals.get(s);
+        }
+
+        failure = new int[size];
+        dictionarySuffix = new int[size];
+        Arrays.fill(rootTransitions, ROOT);
+        dictionarySuffix[ROOT] = NONE;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < childLabels[ROOT].length; i++) {
+            int child = childStates[ROOT][i];
+            rootTransitions[childLabels[ROOT][i] & 0xff] = child;
+            failure[child] = ROOT;
+            dictionarySuffix[child] = NONE;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < childLabels[state].length; i++) {
+                int child = childStates[state][i];
+                int fail = next(failure[state], childLabels[state][i]);
+                failure[child] = fail;
+                dictionarySuffix[child] = terminal[fail] ? fail : dictionarySuffix[fail];
+                queue.add(child);
+            }
+        }
+
+        maxLength = longest;
+        replacement = "****".getBytes(charsetName);
+    }
+
+    /**
+     * @return the length in bytes of the longest secret, {@code 0} if there is nothing to mask.
+     */
+    int getMaxLength() {
+        return maxLength;
+    }
+
+    byte[] getReplacement() {
+        return replacement;
+    }
+
+    int depth(int state) {
+        return depth[state];
+    }
+
+    /**
+     * @return the longest secret ending in the given state, {@link #NONE} if there is none.
+     */
+    int firstMatch(int state) {
+        return terminal[state] ? state : dictionarySuffix[state];
+    }
+
+    /**
+     * @return the next shorter secret ending where the given match ends, {@link #NONE} if there is none.
+     */
+    int nextMatch(int match) {
+        return dictionarySuffix[match];
+    }
+
+    int next(int state, byte b) {
+        while (state != ROOT) {
+            int i = Arrays.binarySearch(childLabels[state], b);
+            if (i >= 0) {
+                return childStates[state][i];
+            }
+            state = failure[state];
+        }
+        return rootTransitions[b & 0xff];
+    }
+}
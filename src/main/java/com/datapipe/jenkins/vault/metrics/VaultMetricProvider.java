@@ -0,0 +1,72 @@
+package com.datapipe.jenkins.vault.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+import jenkins.metrics.api.Metrics;
+import jenkins.model.Jenkins;
+
+/**
+ * Publishes the {@link VaultMetrics} through the Metrics plugin, if it is installed.
+ * <p>
+ * Metrics that first appear later, e.g. for a newly used mount, are registered with the registry as they appear.
+ */
+@Extension(optional = true)
+public class VaultMetricProvider extends MetricProvider {
+    private static final Logger LOGGER = Logger.getLogger(VaultMetricProvider.class.getName());
+
+    static {
+        // once per class rather than per call, as the Metrics plugin may ask for the metric set repeatedly
+        VaultMetrics.get().addListener(new VaultMetrics.Listener() {
+            @Override
+            public void onAdded(String name) {
+                if (Jenkins.getInstanceOrNull() == null) {
+                    return;
+                }
+                MetricRegistry registry = Metrics.metricRegistry();
+                for (String key : VaultMetrics.get().snapshot().keySet()) {
+                    if (key.startsWith(name) && !registry.getNames().contains(key)) {
+                        try {
+                            registry.register(key, gauge(key));
+                        } catch (IllegalArgumentException e) {
+                            LOGGER.log(Level.FINEST, "vault metric " + key + " is already registered", e);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public MetricSet getMetricSet() {
+        return new MetricSet() {
+            @Override
+            public Map<String, Metric> getMetrics() {
+                Map<String, Metric> metrics = new HashMap<>();
+                for (String key : VaultMetrics.get().snapshot().keySet()) {
+                    metrics.put(key, gauge(key));
+                }
+                return metrics;
+            }
+        };
+    }
+
+    private static Gauge<Double> gauge(final String key) {
+        return new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                Double value = VaultMetrics.get().value(key);
+                return value == null ? 0 : value;
+            }
+        };
+    }
+}
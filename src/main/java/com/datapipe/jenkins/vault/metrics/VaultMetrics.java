@@ -0,0 +1,232 @@
+package com.datapipe.jenkins.vault.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms about the plugin's own work: calls to Vault, console masking, configuration
+ * resolution and its caches.
+ * <p>
+ * Recording is cheap and does not need a running Jenkins. The values are published through the Metrics plugin by
+ * {@link VaultMetricProvider} when it is installed, and through the {@link VaultMetricsMXBean} otherwise.
+ */
+public final class VaultMetrics {
+    public static final String AUTH = "vault.auth";
+    public static final String READ = "vault.read";
+    public static final String REVOKE = "vault.revoke";
+    public static final String RENEW = "vault.renew";
+    public static final String CONFIGURATION_RESOLUTION = "vault.configuration.resolution";
+    public static final String MASKING_BYTES = "vault.masking.bytes";
+    public static final String MASKING_MATCHES = "vault.masking.matches";
+    public static final String MASKING_NANOS = "vault.masking.nanos";
+    public static final String CONFIGURATION_CACHE = "vault.cache.configuration";
+    public static final String CREDENTIAL_CACHE = "vault.cache.credential";
+    public static final String TOKEN_CACHE = "vault.cache.token";
+    public static final String SECRET_CACHE = "vault.cache.secret";
+
+    private static final VaultMetrics INSTANCE = new VaultMetrics();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public static VaultMetrics get() {
+        return INSTANCE;
+    }
+
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+                fireAdded(name);
+            }
+        }
+        return counter;
+    }
+
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+                fireAdded(name);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Records the latency of a call that started at the given {@link System#nanoTime()}, and counts it by outcome.
+     */
+    public void recordCall(String name, long startNanos, boolean success) {
+        histogram(name).record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        counter(name + (success ? ".success" : ".failure")).increment();
+    }
+
+    /**
+     * Counts a lookup in one of the plugin's caches.
+     */
+    public void recordCacheLookup(String cache, boolean hit) {
+        counter(cache + (hit ? ".hit" : ".miss")).increment();
+    }
+
+    /**
+     * @return the mount of a Vault path, i.e. its first segment
+     */
+    public static String mountOf(String path) {
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        int slash = trimmed.indexOf('/');
+        return slash < 0 ? trimmed : trimmed.substring(0, slash);
+    }
+
+    /**
+     * @return the names and current values of all metrics; histograms are expanded to count, mean, percentiles
+     * and max in milliseconds, and caches get their hit ratio
+     */
+    public SortedMap<String, Double> snapshot() {
+        SortedMap<String, Double> values = new TreeMap<>();
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            values.put(e.getKey(), (double) e.getValue().getCount());
+        }
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            e.getValue().snapshotInto(e.getKey(), values);
+        }
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            String name = e.getKey();
+            if (name.endsWith(".hit")) {
+                String cache = name.substring(0, name.length() - ".hit".length());
+                values.put(cache + ".hitRatio", hitRatio(cache));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return the current value of a single entry of the {@link #snapshot()}, {@code null} if there is none
+     */
+    public Double value(String key) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            return (double) counter.getCount();
+        }
+        if (key.endsWith(".hitRatio")) {
+            return hitRatio(key.substring(0, key.length() - ".hitRatio".length()));
+        }
+        int dot = key.lastIndexOf('.');
+        Histogram histogram = dot < 0 ? null : histograms.get(key.substring(0, dot));
+        if (histogram == null) {
+            return null;
+        }
+        Map<String, Double> values = new TreeMap<>();
+        histogram.snapshotInto(key.substring(0, dot), values);
+        return values.get(key);
+    }
+
+    private double hitRatio(String cache) {
+        Counter hits = counters.get(cache + ".hit");
+        Counter misses = counters.get(cache + ".miss");
+        long hitCount = hits == null ? 0 : hits.getCount();
+        long total = hitCount + (misses == null ? 0 : misses.getCount());
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void fireAdded(String name) {
+        for (Listener listener : listeners) {
+            listener.onAdded(name);
+        }
+    }
+
+    interface Listener {
+        void onAdded(String name);
+    }
+
+    public static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Latencies in milliseconds, counted in fixed buckets; percentiles are reported as the upper bound of their
+     * bucket.
+     */
+    public static final class Histogram {
+        static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, Long.MAX_VALUE};
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public void record(long millis) {
+            int bucket = 0;
+            while (millis > BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sum.add(millis);
+            max.accumulate(millis);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        long percentile(double quantile) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(BOUNDS[i], max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void snapshotInto(String name, Map<String, Double> values) {
+            long total = count.sum();
+            values.put(name + ".count", (double) total);
+            values.put(name + ".mean", total == 0 ? 0 : (double) sum.sum() / total);
+            values.put(name + ".p50", (double) percentile(0.5));
+            values.put(name + ".p95", (double) percentile(0.95));
+            values.put(name + ".p99", (double) percentile(0.99));
+            values.put(name + ".max", (double) max.get());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.datapipe.jenkins.vault.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import jenkins.model.Jenkins;
+
+/**
+ * Registered at startup unless the Metrics plugin is installed, in which case {@link VaultMetricProvider} is used.
+ */
+public class VaultMetricsMBean implements VaultMetricsMXBean {
+    private static final Logger LOGGER = Logger.getLogger(VaultMetricsMBean.class.getName());
+
+    static final String OBJECT_NAME = "com.datapipe.jenkins.vault:type=VaultMetrics";
+
+    @Override
+    public Map<String, Double> getMetrics() {
+        return VaultMetrics.get().snapshot();
+    }
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void register() {
+        if (Jenkins.getActiveInstance().getPlugin("metrics") != null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new VaultMetricsMBean(), name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "could not register the vault metrics MBean", e);
+        }
+    }
+
+    @Terminator
+    public static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.FINE, "could not unregister the vault metrics MBean", e);
+        }
+    }
+}
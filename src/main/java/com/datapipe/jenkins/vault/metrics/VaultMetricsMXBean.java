@@ -0,0 +1,11 @@
+package com.datapipe.jenkins.vault.metrics;
+
+import java.util.Map;
+
+/**
+ * Publishes the {@link VaultMetrics} as {@code com.datapipe.jenkins.vault:type=VaultMetrics} when the Metrics
+ * plugin is not installed.
+ */
+public interface VaultMetricsMXBean {
+    Map<String, Double> getMetrics();
+}
@@ -24,9 +24,11 @@
 package com.datapipe.jenkins.vault.model;
 
 import hudson.Extension;
+import hudson.Util;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.util.List;
 
@@ -39,6 +41,15 @@ public class VaultSecret extends AbstractDescribableImpl<VaultSecret> {
 
   private String path;
   private List<VaultSecretValue> secretValues;
+  private int cacheTtl;
+  private String kvMount;
+  private int version;
+  private boolean checkVersion;
+  private boolean wrapped;
+  private boolean bindAllKeys;
+  private String keyPattern;
+  private String envVarPrefix;
+  private boolean recursive;
 
   @DataBoundConstructor
   public VaultSecret(String path, List<VaultSecretValue> secretValues) {
@@ -54,6 +65,123 @@ public class VaultSecret extends AbstractDescribableImpl<VaultSecret> {
     return this.secretValues;
   }
 
+  /**
+   * @return seconds the values of this path may be served from the controller's cache, {@code 0} to always read them
+   */
+  public int getCacheTtl() {
+    return this.cacheTtl;
+  }
+
+  @DataBoundSetter
+  public void setCacheTtl(int cacheTtl) {
+    this.cacheTtl = cacheTtl;
+  }
+
+  /**
+   * @return the mount of the version 2 key/value engine the path is relative to, {@code null} to read the path as is
+   */
+  public String getKvMount() {
+    return this.kvMount;
+  }
+
+  @DataBoundSetter
+  public void setKvMount(String kvMount) {
+    this.kvMount = Util.fixEmptyAndTrim(kvMount);
+  }
+
+  /**
+   * @return the version of the key/value secret to read, {@code 0} for the current one
+   */
+  public int getVersion() {
+    return this.version;
+  }
+
+  @DataBoundSetter
+  public void setVersion(int version) {
+    this.version = version;
+  }
+
+  /**
+   * @return whether to look up the current version of the key/value secret first, and only download it if the
+   * controller has not cached that version yet
+   */
+  public boolean isCheckVersion() {
+    return this.checkVersion;
+  }
+
+  @DataBoundSetter
+  public void setCheckVersion(boolean checkVersion) {
+    this.checkVersion = checkVersion;
+  }
+
+  /**
+   * @return whether the agent unwraps the values itself and writes them to files, so they never pass through the
+   * controller; the variables then hold the paths of the files
+   */
+  public boolean isWrapped() {
+    return this.wrapped;
+  }
+
+  @DataBoundSetter
+  public void setWrapped(boolean wrapped) {
+    this.wrapped = wrapped;
+  }
+
+  /**
+   * @return whether to bind every key at the path to a variable named after it, in addition to the secret values
+   */
+  public boolean isBindAllKeys() {
+    return this.bindAllKeys;
+  }
+
+  @DataBoundSetter
+  public void setBindAllKeys(boolean bindAllKeys) {
+    this.bindAllKeys = bindAllKeys;
+  }
+
+  /**
+   * @return a regular expression keys must match to be bound to a variable named after them, {@code null} for none
+   */
+  public String getKeyPattern() {
+    return this.keyPattern;
+  }
+
+  @DataBoundSetter
+  public void setKeyPattern(String keyPattern) {
+    this.keyPattern = Util.fixEmptyAndTrim(keyPattern);
+  }
+
+  /**
+   * @return the prefix of the names of variables bound to keys
+   */
+  public String getEnvVarPrefix() {
+    return this.envVarPrefix;
+  }
+
+  @DataBoundSetter
+  public void setEnvVarPrefix(String envVarPrefix) {
+    this.envVarPrefix = Util.fixEmptyAndTrim(envVarPrefix);
+  }
+
+  /**
+   * @return whether the path is a folder whose secrets are all read, with their keys relative to it
+   */
+  public boolean isRecursive() {
+    return this.recursive;
+  }
+
+  @DataBoundSetter
+  public void setRecursive(boolean recursive) {
+    this.recursive = recursive;
+  }
+
+  /**
+   * @return whether keys are bound to variables named after them
+   */
+  public boolean bindsKeys() {
+    return bindAllKeys || keyPattern != null || recursive;
+  }
+
   @Extension
   public static final class DescriptorImpl extends Descriptor<VaultSecret> {
 
@@ -24,6 +24,7 @@
 package com.datapipe.jenkins.vault.model;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import hudson.Extension;
 import hudson.model.AbstractDescribableImpl;
@@ -37,6 +38,7 @@ public class VaultSecretValue
 
   private String envVar;
   private String vaultKey;
+  private boolean file;
 
   @DataBoundConstructor
   public VaultSecretValue(String envVar, String vaultKey) {
@@ -52,6 +54,18 @@ public class VaultSecretValue
     return this.vaultKey;
   }
 
+  /**
+   * @return whether the value is written to a file on the agent, the environment variable holding its path
+   */
+  public boolean isFile() {
+    return this.file;
+  }
+
+  @DataBoundSetter
+  public void setFile(boolean file) {
+    this.file = file;
+  }
+
   @Extension
   public static final class DescriptorImpl
       extends Descriptor<VaultSecretValue> {
@@ -0,0 +1,209 @@
+package com.datapipe.jenkins.vault;
+
+import com.bettercloud.vault.Vault;
+import com.bettercloud.vault.VaultConfig;
+import com.bettercloud.vault.VaultException;
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VaultAccessorSpec {
+    private HttpServer vaultServer;
+
+    /** Requests received, as method, path and token. */
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    /** Status of the responses to reads; anything but 200 answers with an error. */
+    private volatile int status = 200;
+
+    @Before
+    public void startVaultServer() throws IOException {
+        vaultServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        vaultServer.createContext("/v1/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requests.add(exchange.getRequestMethod() + " " + path + " " + exchange.getRequestHeaders().getFirst("X-Vault-Token"));
+                String body = path.endsWith("/renew-self")
+                        ? "{\"auth\":{\"client_token\":\"renewed\",\"lease_duration\":3600,\"renewable\":true}}"
+                        : status != 200 ? "{\"errors\":[\"unavailable\"]}"
+                        : path.startsWith("/v1/kv/metadata/") ? "{\"data\":{\"current_version\":3}}"
+                        : path.startsWith("/v1/kv/data/") ? "{\"data\":{\"data\":{\"value\":\"s3cret\"}}}"
+                        : "{\"data\":{\"value\":\"s3cret\"}}";
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(path.endsWith("/renew-self") ? 200 : status, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        });
+        vaultServer.start();
+    }
+
+    @After
+    public void stopVaultServer() {
+        vaultServer.stop(0);
+    }
+
+    private String vaultUrl() {
+        return "http://127.0.0.1:" + vaultServer.getAddress().getPort();
+    }
+
+    private static VaultCredential credentialReturning(VaultAuthToken first, VaultAuthToken... next) {
+        VaultCredential credential = mock(VaultCredential.class);
+        // the token cache is shared, so every test logs in with a credential of its own
+        when(credential.getId()).thenReturn(UUID.randomUUID().toString());
+        when(credential.authenticate(any(Vault.class), any(VaultConfig.class))).thenReturn(first, next);
+        return credential;
+    }
+
+    @Test
+    public void shouldLogInOnceForAllReads() {
+        VaultCredential credential = credentialReturning(new VaultAuthToken("session", 3600, true));
+        VaultAccessor accessor = new VaultAccessor();
+        accessor.init(vaultUrl());
+        accessor.auth(credential);
+
+        accessor.read("secret/one");
+        accessor.read("secret/two");
+        accessor.read("secret/three");
+
+        verify(credential, times(1)).authenticate(any(Vault.class), any(VaultConfig.class));
+        assertThat(requests, contains("GET /v1/secret/one session", "GET /v1/secret/two session", "GET /v1/secret/three session"));
+    }
+
+    @Test
+    public void shouldRenewTokenNearItsTtl() throws InterruptedException {
+        VaultCredential credential = credentialReturning(new VaultAuthToken("session", 1, true));
+        VaultAccessor accessor = new VaultAccessor();
+        accessor.init(vaultUrl());
+        accessor.auth(credential);
+
+        // two thirds of the one second lease
+        Thread.sleep(700);
+        accessor.read("secret/one");
+
+        verify(credential, times(1)).authenticate(any(Vault.class), any(VaultConfig.class));
+        assertThat(requests, contains("POST /v1/auth/token/renew-self session", "GET /v1/secret/one renewed"));
+        assertThat(accessor.getToken().getLeaseDuration(), is(3600L));
+    }
+
+    @Test
+    public void shouldLogInAgainWhenTokenIsNotRenewable() throws InterruptedException {
+        VaultCredential credential = credentialReturning(new VaultAuthToken("session", 1, false),
+                new VaultAuthToken("next-session", 3600, false));
+        VaultAccessor accessor = new VaultAccessor();
+        accessor.init(vaultUrl());
+        accessor.auth(credential);
+
+        Thread.sleep(700);
+        accessor.read("secret/one");
+
+        verify(credential, times(2)).authenticate(any(Vault.class), any(VaultConfig.class));
+        assertThat(requests, contains("GET /v1/secret/one next-session"));
+    }
+
+    @Test
+    public void shouldCacheCurrentVersionForTokenWithUnknownPolicies() {
+        VaultAccessor accessor = new VaultAccessor();
+        accessor.init(vaultUrl());
+        // like the token of a token credential, whose policies the plugin does not know
+        accessor.useToken(new VaultAuthToken("user-token"));
+
+        accessor.readKv2Version("kv", "app", 0);
+        LogicalResponse response = accessor.readKv2Version("kv", "app", 0);
+
+        assertThat(response.getData().get("value"), is("s3cret"));
+        assertThat(requests, contains("GET /v1/kv/metadata/app user-token", "GET /v1/kv/data/app user-token",
+                "GET /v1/kv/metadata/app user-token"));
+    }
+
+    @Test
+    public void shouldNotRetryReadWithSideEffectsThatReachedVault() {
+        status = 503;
+        VaultAccessor accessor = new VaultAccessor();
+        accessor.init(vaultUrl());
+
+        try {
+            accessor.read("database/creds/role");
+            fail("expected the read to fail");
+        } catch (VaultPluginException e) {
+            assertThat(requests.size(), is(1));
+        }
+    }
+
+    @Test
+    public void shouldRetryIdempotentRead() {
+        status = 503;
+        VaultAccessor accessor = new VaultAccessor();
+        accessor.init(vaultUrl());
+
+        try {
+            accessor.readIdempotent("secret/one");
+            fail("expected the read to fail");
+        } catch (VaultPluginException e) {
+            assertThat(requests.size(), is(VaultAccessor.MAX_RETRIES + 1));
+        }
+    }
+
+    @Test
+    public void shouldTellWhetherRequestReachedVault() {
+        assertThat(VaultAccessor.isUnsent(new VaultException(new ConnectException("Connection refused"))), is(true));
+        assertThat(VaultAccessor.isUnsent(new VaultException(new SocketTimeoutException("connect timed out"))), is(true));
+        assertThat(VaultAccessor.isUnsent(new VaultException("rate limited", 429)), is(true));
+        assertThat(VaultAccessor.isUnsent(new VaultException(new SocketTimeoutException("Read timed out"))), is(false));
+        assertThat(VaultAccessor.isUnsent(new VaultException("unavailable", 503)), is(false));
+    }
+
+    @Test
+    public void shouldAuthenticateThroughAuthorizeWithVault() throws Exception {
+        // a credential implemented before authenticate existed
+        VaultCredential credential = mock(VaultCredential.class, CALLS_REAL_METHODS);
+        doAnswer(new Answer<Vault>() {
+            @Override
+            public Vault answer(InvocationOnMock invocation) {
+                VaultConfig config = invocation.getArgument(1);
+                return new Vault(config.token("legacy"));
+            }
+        }).when(credential).authorizeWithVault(any(Vault.class), any(VaultConfig.class));
+        VaultConfig config = VaultClientFactory.newConfig(vaultUrl());
+
+        VaultAuthToken token = credential.authenticate(new Vault(config), config);
+
+        assertThat(token.getToken(), is("legacy"));
+        assertThat(token.getLeaseDuration(), is(0L));
+        assertThat(config.getToken(), is((String) null));
+    }
+}
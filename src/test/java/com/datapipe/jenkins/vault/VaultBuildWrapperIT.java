@@ -0,0 +1,133 @@
+package com.datapipe.jenkins.vault;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.datapipe.jenkins.vault.VaultSecretPrefetcher.Prefetched;
+import com.datapipe.jenkins.vault.configuration.VaultConfiguration;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.it.VaultConfigurationIT;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import com.datapipe.jenkins.vault.model.VaultSecretValue;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.queue.QueueListener;
+import hudson.tasks.Shell;
+
+public class VaultBuildWrapperIT {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private FreeStyleProject project;
+
+    @Before
+    public void setupJenkins() throws Exception {
+        SystemCredentialsProvider.getInstance().setDomainCredentialsMap(Collections.singletonMap(Domain.global(),
+                Arrays.<Credentials>asList(VaultConfigurationIT.createTokenCredential("cred"))));
+        project = jenkins.createFreeStyleProject("test");
+    }
+
+    private static VaultAccessor accessorWithLease() {
+        VaultAccessor vaultAccessor = mock(VaultAccessor.class);
+        Map<String, String> data = new HashMap<>();
+        data.put("username", "v-user");
+        LogicalResponse resp = mock(LogicalResponse.class);
+        when(resp.getData()).thenReturn(data);
+        when(resp.getLeaseId()).thenReturn("database/creds/role/1");
+        when(resp.getLeaseDuration()).thenReturn(3600L);
+        when(resp.getRenewable()).thenReturn(true);
+        when(vaultAccessor.read("database/creds/role")).thenReturn(resp);
+        return vaultAccessor;
+    }
+
+    @Test
+    public void shouldRevokeLeasesWhenBindingFails() throws Exception {
+        VaultSecret secret = new VaultSecret("database/creds/role",
+                Collections.singletonList(new VaultSecretValue("DB_USER", "username")));
+        secret.setKeyPattern("[");
+        VaultBuildWrapper vaultBuildWrapper = new VaultBuildWrapper(Collections.singletonList(secret));
+        vaultBuildWrapper.setVaultAccessor(accessorWithLease());
+        // not reachable, so the revocation stays queued
+        vaultBuildWrapper.setConfiguration(new VaultConfiguration("http://localhost:1", "cred"));
+        project.getBuildWrappersList().add(vaultBuildWrapper);
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        jenkins.assertBuildStatus(Result.FAILURE, build);
+        jenkins.assertLogContains("Invalid key pattern", build);
+        assertThat(VaultLeaseManager.get().getTrackedCount(), is(0));
+        assertThat(VaultLeaseRevoker.get().getPendingCount(), is(1));
+    }
+
+    @Test
+    public void shouldReadSecretsItselfWhenPrefetchFails() throws Exception {
+        // only the failing prefetcher below may prefetch
+        List<QueueListener> prefetchers = new ArrayList<>();
+        for (QueueListener listener : QueueListener.all()) {
+            if (listener.getClass() == VaultSecretPrefetcher.class) {
+                prefetchers.add(listener);
+            }
+        }
+        QueueListener.all().removeAll(prefetchers);
+        VaultAccessor vaultAccessor = mock(VaultAccessor.class);
+        LogicalResponse resp = mock(LogicalResponse.class);
+        when(resp.getData()).thenReturn(Collections.singletonMap("key1", "some-secret"));
+        when(vaultAccessor.read("secret/path1")).thenReturn(resp);
+        VaultBuildWrapper vaultBuildWrapper = new VaultBuildWrapper(Collections.singletonList(new VaultSecret("secret/path1",
+                Collections.singletonList(new VaultSecretValue("envVar1", "key1")))));
+        vaultBuildWrapper.setVaultAccessor(vaultAccessor);
+        vaultBuildWrapper.setConfiguration(new VaultConfiguration("http://localhost:1", "cred"));
+        vaultBuildWrapper.setPrefetch(true);
+        project.getBuildWrappersList().add(vaultBuildWrapper);
+        project.getBuildersList().add(new Shell("echo $envVar1"));
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        jenkins.assertBuildStatus(Result.SUCCESS, build);
+        jenkins.assertLogContains("echo ****", build);
+        assertThat(((FailingPrefetcher) VaultSecretPrefetcher.get()).attempts.get(), is(1));
+        verify(vaultAccessor, times(1)).read("secret/path1");
+    }
+
+    @TestExtension("shouldReadSecretsItselfWhenPrefetchFails")
+    public static class FailingPrefetcher extends VaultSecretPrefetcher {
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        @Override
+        void prefetch(long queueId, Job<?, ?> job, VaultBuildWrapper wrapper) {
+            attempts.incrementAndGet();
+            prefetch(queueId, new Callable<Prefetched>() {
+                @Override
+                public Prefetched call() {
+                    throw new VaultPluginException("vault is down");
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.datapipe.jenkins.vault;
+
+import com.bettercloud.vault.VaultException;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class VaultCircuitBreakerSpec {
+
+    private void failTimes(VaultCircuitBreaker breaker, int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.acquire();
+            breaker.onFailure();
+        }
+    }
+
+    private void assertFailsFast(VaultCircuitBreaker breaker) {
+        try {
+            breaker.acquire();
+            fail("expected the breaker to be open");
+        } catch (VaultPluginException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldOpenAfterConsecutiveFailures() {
+        VaultCircuitBreaker breaker = new VaultCircuitBreaker("http://vault", 3, 60000);
+
+        failTimes(breaker, 2);
+        assertThat(breaker.isOpen(), is(false));
+        failTimes(breaker, 1);
+
+        assertThat(breaker.isOpen(), is(true));
+        assertFailsFast(breaker);
+    }
+
+    @Test
+    public void shouldNotOpenWhenFailuresAreInterrupted() {
+        VaultCircuitBreaker breaker = new VaultCircuitBreaker("http://vault", 3, 60000);
+
+        failTimes(breaker, 2);
+        breaker.acquire();
+        breaker.onSuccess();
+        failTimes(breaker, 2);
+
+        assertThat(breaker.isOpen(), is(false));
+    }
+
+    @Test
+    public void shouldLetSingleTrialThroughAfterOpenPeriod() {
+        VaultCircuitBreaker breaker = new VaultCircuitBreaker("http://vault", 1, 0);
+        failTimes(breaker, 1);
+
+        breaker.acquire();
+        assertFailsFast(breaker);
+        breaker.onSuccess();
+
+        assertThat(breaker.isOpen(), is(false));
+        breaker.acquire();
+    }
+
+    @Test
+    public void shouldStayOpenWhenTrialFails() {
+        VaultCircuitBreaker breaker = new VaultCircuitBreaker("http://vault", 1, 0);
+        failTimes(breaker, 1);
+
+        breaker.acquire();
+        breaker.onFailure();
+
+        assertThat(breaker.isOpen(), is(true));
+    }
+
+    @Test
+    public void shouldOnlyRetryWhenVaultIsUnavailable() {
+        assertThat(VaultAccessor.isRetryable(new VaultException("connection refused")), is(true));
+        assertThat(VaultAccessor.isRetryable(new VaultException("unavailable", 503)), is(true));
+        assertThat(VaultAccessor.isRetryable(new VaultException("rate limited", 429)), is(true));
+        assertThat(VaultAccessor.isRetryable(new VaultException("permission denied", 403)), is(false));
+        assertThat(VaultAccessor.isRetryable(new VaultException("not found", 404)), is(false));
+    }
+}
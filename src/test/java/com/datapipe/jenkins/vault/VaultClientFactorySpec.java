@@ -0,0 +1,33 @@
+package com.datapipe.jenkins.vault;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import org.junit.Test;
+
+import com.bettercloud.vault.VaultConfig;
+
+public class VaultClientFactorySpec {
+
+    @Test
+    public void shouldReuseSslConfigPerUrl() throws Exception {
+        VaultConfig first = VaultClientFactory.newConfig("https://vault.example.com:8200");
+        VaultConfig second = VaultClientFactory.newConfig("https://vault.example.com:8200");
+        VaultConfig other = VaultClientFactory.newConfig("https://other.example.com:8200");
+
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(second.getSslConfig(), is(sameInstance(first.getSslConfig())));
+        assertThat(other.getSslConfig(), is(not(sameInstance(first.getSslConfig()))));
+    }
+
+    @Test
+    public void shouldApplyTimeouts() throws Exception {
+        VaultConfig config = VaultClientFactory.newConfig("https://vault.example.com:8200");
+
+        assertThat(config.getAddress(), is("https://vault.example.com:8200"));
+        assertThat(config.getOpenTimeout(), is(10));
+        assertThat(config.getReadTimeout(), is(30));
+    }
+}
@@ -0,0 +1,45 @@
+package com.datapipe.jenkins.vault;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class VaultKv2Spec {
+
+    private LogicalResponse response(String body) {
+        return LogicalResponses.of(body);
+    }
+
+    @Test
+    public void shouldBuildPathsRelativeToMount() {
+        assertThat(VaultKv2.dataPath("/secret/", "/team/db"), is("secret/data/team/db"));
+        assertThat(VaultKv2.dataPath("secret", "team/db", 3), is("secret/data/team/db?version=3"));
+        assertThat(VaultKv2.metadataPath("secret", "team/db"), is("secret/metadata/team/db"));
+    }
+
+    @Test
+    public void shouldUnwrapValues() {
+        LogicalResponse response = response("{\"data\":{\"data\":{\"user\":\"admin\",\"password\":\"s3cret\"},"
+                + "\"metadata\":{\"version\":3}}}");
+
+        LogicalResponse unwrapped = VaultKv2.unwrap("secret/data/team/db", response);
+
+        assertThat(unwrapped.getData().get("user"), is("admin"));
+        assertThat(unwrapped.getData().get("password"), is("s3cret"));
+    }
+
+    @Test
+    public void shouldReadCurrentVersion() {
+        LogicalResponse metadata = response("{\"data\":{\"current_version\":7,\"max_versions\":0}}");
+
+        assertThat(VaultKv2.currentVersion("secret/metadata/team/db", metadata), is(7));
+    }
+
+    @Test(expected = VaultPluginException.class)
+    public void shouldFailWithoutValues() {
+        VaultKv2.unwrap("secret/data/team/db", response("{\"data\":{\"user\":\"admin\"}}"));
+    }
+}
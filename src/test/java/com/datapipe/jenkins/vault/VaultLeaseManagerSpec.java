@@ -0,0 +1,65 @@
+package com.datapipe.jenkins.vault;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.bettercloud.vault.response.VaultResponse;
+import com.bettercloud.vault.rest.RestResponse;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.mock;
+
+public class VaultLeaseManagerSpec {
+
+    private static RestResponse body(String json) {
+        return new RestResponse(200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static LogicalResponse response(String leaseId, boolean renewable, long leaseDuration) {
+        return LogicalResponses.of("{\"lease_id\":\"" + leaseId + "\",\"renewable\":" + renewable
+                + ",\"lease_duration\":" + leaseDuration + ",\"data\":{\"username\":\"user\"}}");
+    }
+
+    @Test
+    public void shouldTrackOnlyRenewableLeasesUntilReleased() {
+        VaultLeaseManager manager = new VaultLeaseManager();
+
+        manager.track("http://vault", mock(VaultCredential.class), null, Arrays.asList(
+                response("database/creds/role/1", true, 3600),
+                response("database/creds/role/2", false, 3600),
+                response("", false, 0)));
+
+        assertThat(manager.getTrackedCount(), is(1));
+
+        manager.release(Collections.singletonList("database/creds/role/1"));
+
+        assertThat(manager.getTrackedCount(), is(0));
+    }
+
+    @Test
+    public void shouldRenewAtFractionOfTtl() {
+        assertThat(VaultLeaseManager.renewalDelayMillis(300), is((long) (300000 * VaultLeaseManager.RENEW_AT)));
+    }
+
+    @Test
+    public void shouldFallBackToDefaultRenewAtForInvalidValues() {
+        assertThat(VaultLeaseManager.renewAt(null), is(0.66));
+        assertThat(VaultLeaseManager.renewAt(" 0.5 "), is(0.5));
+        assertThat(VaultLeaseManager.renewAt("half"), is(0.66));
+        assertThat(VaultLeaseManager.renewAt("0"), is(0.66));
+        assertThat(VaultLeaseManager.renewAt("1.5"), is(0.66));
+        assertThat(VaultLeaseManager.renewAt("NaN"), is(0.66));
+    }
+
+    @Test
+    public void shouldReadRenewedLeaseDuration() {
+        VaultResponse renewed = new VaultResponse(body("{\"lease_id\":\"database/creds/role/1\",\"renewable\":true,\"lease_duration\":1800}"), 0);
+
+        assertThat(VaultLeaseManager.leaseDuration(renewed), is(1800L));
+    }
+}
@@ -0,0 +1,229 @@
+package com.datapipe.jenkins.vault;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.bettercloud.vault.response.VaultResponse;
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.credentials.VaultTokenCredential;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+
+import hudson.util.Secret;
+
+public class VaultLeaseRevokerIT {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final FakeVault vault = new FakeVault();
+
+    /**
+     * Records what the revoker asks Vault for, instead of talking to one.
+     */
+    static class FakeVault {
+        final List<String> logins = new CopyOnWriteArrayList<>();
+        final List<String> tokensUsed = new CopyOnWriteArrayList<>();
+        final List<String> revoked = new CopyOnWriteArrayList<>();
+        final List<String> revokedTokens = new CopyOnWriteArrayList<>();
+        volatile boolean down;
+
+        VaultAccessor newAccessor() {
+            return new VaultAccessor() {
+                private static final long serialVersionUID = 1L;
+
+                private String url;
+                private String token;
+
+                @Override
+                public void init(String url) {
+                    this.url = url;
+                }
+
+                @Override
+                public synchronized void auth(VaultCredential vaultCredential) {
+                    logins.add(url + " " + vaultCredential.getId());
+                    if (down) {
+                        throw new VaultPluginException("could not log in into vault");
+                    }
+                    token = "login-" + vaultCredential.getId();
+                }
+
+                @Override
+                public synchronized void useToken(VaultAuthToken authToken) {
+                    tokensUsed.add(authToken.getToken());
+                    token = authToken.getToken();
+                }
+
+                @Override
+                public synchronized VaultResponse revoke(String leaseId) {
+                    if (down || revokedTokens.contains(token)) {
+                        throw new VaultPluginException("could not revoke vault lease (" + leaseId + ")");
+                    }
+                    revoked.add(leaseId);
+                    return null;
+                }
+            };
+        }
+    }
+
+    /**
+     * Revokes only when asked to, at a time set by the test.
+     */
+    static class TestRevoker extends VaultLeaseRevoker {
+        private transient FakeVault vault;
+        private transient long now = System.currentTimeMillis();
+
+        TestRevoker(FakeVault vault) {
+            this.vault = vault;
+        }
+
+        @Override
+        VaultAccessor newAccessor() {
+            return vault.newAccessor();
+        }
+
+        @Override
+        long now() {
+            return now;
+        }
+
+        @Override
+        void revokeSoon() {
+        }
+    }
+
+    @Before
+    public void setUpCredentials() {
+        SystemCredentialsProvider.getInstance().setDomainCredentialsMap(Collections.singletonMap(Domain.global(),
+                Arrays.<Credentials>asList(
+                        new VaultTokenCredential(CredentialsScope.GLOBAL, "cred-1", "first", Secret.fromString("token-1")),
+                        new VaultTokenCredential(CredentialsScope.GLOBAL, "cred-2", "second", Secret.fromString("token-2")))));
+    }
+
+    @Test
+    public void shouldLogInOncePerUrlAndCredential() {
+        TestRevoker revoker = new TestRevoker(vault);
+        revoker.revoke("http://vault-a", "cred-1", null, Arrays.asList("a/1", "a/2", "a/3"), null);
+        revoker.revoke("http://vault-b", "cred-1", null, Arrays.asList("b/1", "b/2"), null);
+        revoker.revoke("http://vault-a", "cred-2", null, Collections.singletonList("a/4"), null);
+
+        revoker.revokeDue();
+
+        assertThat(vault.logins, contains("http://vault-a cred-1", "http://vault-b cred-1", "http://vault-a cred-2"));
+        assertThat(vault.revoked, containsInAnyOrder("a/1", "a/2", "a/3", "b/1", "b/2", "a/4"));
+        assertThat(revoker.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldUseTokenOfBuildWhileValid() {
+        TestRevoker revoker = new TestRevoker(vault);
+        VaultAuthToken buildToken = new VaultAuthToken("build-token", 3600, true);
+        revoker.revoke("http://vault", "cred-1", null, Arrays.asList("database/creds/1", "database/creds/2"), buildToken);
+
+        revoker.revokeDue();
+
+        assertThat(vault.tokensUsed, contains("build-token"));
+        assertThat(vault.logins.isEmpty(), is(true));
+        assertThat(vault.revoked, contains("database/creds/1", "database/creds/2"));
+    }
+
+    @Test
+    public void shouldLogInWhenTokenOfBuildExpired() throws Exception {
+        TestRevoker revoker = new TestRevoker(vault);
+        VaultAuthToken buildToken = new VaultAuthToken("build-token", 1, true);
+        revoker.revoke("http://vault", "cred-1", null, Collections.singletonList("database/creds/1"), buildToken);
+        Thread.sleep(1100);
+
+        revoker.revokeDue();
+
+        assertThat(vault.tokensUsed.isEmpty(), is(true));
+        assertThat(vault.logins, contains("http://vault cred-1"));
+        assertThat(vault.revoked, contains("database/creds/1"));
+    }
+
+    @Test
+    public void shouldLogInWhenTokenOfBuildWasRevoked() {
+        TestRevoker revoker = new TestRevoker(vault);
+        VaultAuthToken buildToken = new VaultAuthToken("build-token", 3600, true);
+        vault.revokedTokens.add("build-token");
+        revoker.revoke("http://vault", "cred-1", null, Arrays.asList("database/creds/1", "database/creds/2"), buildToken);
+
+        revoker.revokeDue();
+
+        assertThat(vault.tokensUsed, contains("build-token"));
+        assertThat(vault.logins, contains("http://vault cred-1"));
+        assertThat(vault.revoked, contains("database/creds/1", "database/creds/2"));
+        assertThat(revoker.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldReloadPendingRevocationsAfterRestart() {
+        vault.down = true;
+        TestRevoker revoker = new TestRevoker(vault);
+        revoker.revoke("http://vault", "cred-1", null, Arrays.asList("database/creds/1", "database/creds/2"), null);
+        revoker.revokeDue();
+        assertThat(revoker.getPendingCount(), is(2));
+
+        vault.down = false;
+        TestRevoker restarted = new TestRevoker(vault);
+        assertThat(restarted.getPendingCount(), is(2));
+
+        // the failed attempt and its backoff were persisted as well
+        restarted.revokeDue();
+        assertThat(vault.revoked.isEmpty(), is(true));
+        restarted.now += VaultLeaseRevoker.backoff(1);
+        restarted.revokeDue();
+
+        assertThat(vault.revoked, contains("database/creds/1", "database/creds/2"));
+        assertThat(restarted.getPendingCount(), is(0));
+        assertThat(new TestRevoker(vault).getPendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldDoubleBackoffUpToMaximum() {
+        assertThat(VaultLeaseRevoker.backoff(1), is(VaultLeaseRevoker.INITIAL_BACKOFF));
+        assertThat(VaultLeaseRevoker.backoff(2), is(2 * VaultLeaseRevoker.INITIAL_BACKOFF));
+        assertThat(VaultLeaseRevoker.backoff(3), is(4 * VaultLeaseRevoker.INITIAL_BACKOFF));
+        assertThat(VaultLeaseRevoker.backoff(VaultLeaseRevoker.MAX_ATTEMPTS), is(VaultLeaseRevoker.MAX_BACKOFF));
+        assertThat(VaultLeaseRevoker.backoff(100), is(VaultLeaseRevoker.MAX_BACKOFF));
+    }
+
+    @Test
+    public void shouldRetryOnScheduleAndGiveUpAfterLastAttempt() {
+        vault.down = true;
+        TestRevoker revoker = new TestRevoker(vault);
+        revoker.revoke("http://vault", "cred-1", null, Collections.singletonList("database/creds/1"), null);
+
+        for (int attempt = 1; attempt <= VaultLeaseRevoker.MAX_ATTEMPTS; attempt++) {
+            assertThat(revoker.getPendingCount(), is(1));
+            revoker.revokeDue();
+            assertThat(vault.logins.size(), is(attempt));
+
+            // not due again before the backoff has passed
+            revoker.now += VaultLeaseRevoker.backoff(attempt) - 1;
+            revoker.revokeDue();
+            assertThat(vault.logins.size(), is(attempt));
+            revoker.now += 1;
+        }
+
+        assertThat(revoker.getPendingCount(), is(0));
+        revoker.revokeDue();
+        assertThat(vault.logins.size(), is(VaultLeaseRevoker.MAX_ATTEMPTS));
+    }
+}
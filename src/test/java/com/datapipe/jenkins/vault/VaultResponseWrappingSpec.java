@@ -0,0 +1,114 @@
+package com.datapipe.jenkins.vault;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class VaultResponseWrappingSpec {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * @return a Vault answering every request with the given body, to be stopped by the caller
+     */
+    private static HttpServer vaultAnswering(final String body) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static String url(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Test
+    public void shouldCarryWrappingToken() {
+        LogicalResponse response = VaultResponseWrapping.asResponse("s.wrapping");
+
+        assertThat(VaultResponseWrapping.wrappingToken(response), is("s.wrapping"));
+        assertThat(response.getData().isEmpty(), is(true));
+        assertThat(VaultBuildWrapper.retrieveLeaseIds(Collections.singletonList(response)).isEmpty(), is(true));
+    }
+
+    @Test(expected = VaultPluginException.class)
+    public void shouldRejectPlainResponse() {
+        VaultResponseWrapping.wrappingToken(LogicalResponses.of("{\"data\":{\"key\":\"value\"}}"));
+    }
+
+    @Test
+    public void shouldHandLeaseOfUnwrappedSecretBack() throws Exception {
+        HttpServer vault = vaultAnswering("{\"lease_id\":\"database/creds/role/1\",\"lease_duration\":3600,\"renewable\":true,"
+                + "\"data\":{\"username\":\"v-user\",\"password\":\"s3cret\"}}");
+        try {
+            File dir = temp.newFolder();
+            String lease = new VaultResponseWrapping.UnwrapToFiles(url(vault), "s.wrapping",
+                    Collections.singletonMap("password", "DB_PASSWORD"), false).invoke(dir, null);
+
+            assertThat(new String(Files.readAllBytes(new File(dir, "DB_PASSWORD").toPath()), StandardCharsets.UTF_8), is("s3cret"));
+            assertThat(lease.contains("s3cret") || lease.contains("v-user"), is(false));
+            LogicalResponse response = VaultResponseWrapping.leaseResponse(lease);
+            assertThat(response.getLeaseId(), is("database/creds/role/1"));
+            assertThat(response.getLeaseDuration(), is(3600L));
+            assertThat(response.getRenewable(), is(true));
+        } finally {
+            vault.stop(0);
+        }
+    }
+
+    @Test
+    public void shouldHandNothingBackForStaticSecret() throws Exception {
+        HttpServer vault = vaultAnswering("{\"lease_id\":\"\",\"data\":{\"password\":\"s3cret\"}}");
+        try {
+            String lease = new VaultResponseWrapping.UnwrapToFiles(url(vault), "s.wrapping",
+                    Collections.singletonMap("password", "DB_PASSWORD"), false).invoke(temp.newFolder(), null);
+
+            assertThat(lease, is(nullValue()));
+        } finally {
+            vault.stop(0);
+        }
+    }
+
+    @Test
+    public void shouldReplaceFileOfSecretDeclaredEarlier() throws Exception {
+        HttpServer vault = vaultAnswering("{\"lease_id\":\"\",\"data\":{\"password\":\"s3cret\"}}");
+        try {
+            File dir = temp.newFolder();
+            new VaultSecretFiles.WriteFiles(Collections.singletonMap("DB_PASSWORD", "earlier")).invoke(dir, null);
+
+            new VaultResponseWrapping.UnwrapToFiles(url(vault), "s.wrapping",
+                    Collections.singletonMap("password", "DB_PASSWORD"), false).invoke(dir, null);
+
+            assertThat(new String(Files.readAllBytes(new File(dir, "DB_PASSWORD").toPath()), StandardCharsets.UTF_8), is("s3cret"));
+        } finally {
+            vault.stop(0);
+        }
+    }
+}
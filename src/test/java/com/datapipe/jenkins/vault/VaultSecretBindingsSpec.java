@@ -0,0 +1,174 @@
+package com.datapipe.jenkins.vault;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import com.datapipe.jenkins.vault.model.VaultSecretValue;
+import hudson.FilePath;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class VaultSecretBindingsSpec {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static LogicalResponse response(String data) {
+        return LogicalResponses.of("{\"data\":" + data + "}");
+    }
+
+    /**
+     * Serves a folder holding {@code app} and {@code db/prod}.
+     */
+    private static class TreeAccessor extends VaultAccessor {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, String> paths = new HashMap<>();
+
+        TreeAccessor() {
+            paths.put("team/?list=true", "{\"keys\":[\"app\",\"db/\"]}");
+            paths.put("team/db/?list=true", "{\"keys\":[\"prod\"]}");
+            paths.put("team/app", "{\"token\":\"t0k3n\"}");
+            paths.put("team/db/prod", "{\"password\":\"s3cret\"}");
+        }
+
+        @Override
+        public LogicalResponse read(String path) {
+            return response(paths.get(path));
+        }
+
+        @Override
+        public LogicalResponse readIdempotent(String path) {
+            return response(paths.get(path));
+        }
+    }
+
+    @Test
+    public void shouldNameVariablesAfterKeys() {
+        assertThat(VaultSecretBindings.envVarName(null, "db/prod/password"), is("DB_PROD_PASSWORD"));
+        assertThat(VaultSecretBindings.envVarName("APP_", "api-key.v2"), is("APP_API_KEY_V2"));
+    }
+
+    @Test
+    public void shouldBindAllKeys() throws Exception {
+        VaultSecret secret = new VaultSecret("team/app", null);
+        secret.setBindAllKeys(true);
+        secret.setEnvVarPrefix("APP_");
+
+        VaultSecretBindings bindings = VaultSecretBindings.bind("http://vault", Collections.singletonList(secret),
+                Collections.singletonList(response("{\"user\":\"admin\",\"password\":\"s3cret\"}")), null, new ArrayList<LogicalResponse>());
+
+        assertThat(bindings.getEnv().keySet(), contains("APP_PASSWORD", "APP_USER"));
+        assertThat(bindings.getValuesToMask(), hasItems("admin", "s3cret"));
+    }
+
+    @Test
+    public void shouldBindMatchingKeysAndSecretValues() throws Exception {
+        VaultSecret secret = new VaultSecret("team/app", Collections.singletonList(new VaultSecretValue("USER", "user")));
+        secret.setKeyPattern("db_.*");
+
+        VaultSecretBindings bindings = VaultSecretBindings.bind("http://vault", Collections.singletonList(secret),
+                Collections.singletonList(response("{\"user\":\"admin\",\"db_host\":\"db\",\"api_key\":\"k3y\"}")), null, new ArrayList<LogicalResponse>());
+
+        assertThat(bindings.getEnv().keySet(), contains("DB_HOST", "USER"));
+    }
+
+    @Test
+    public void shouldReadAllSecretsBelowFolder() throws Exception {
+        VaultSecret secret = new VaultSecret("team", null);
+        secret.setRecursive(true);
+        List<VaultSecret> secrets = Collections.singletonList(secret);
+
+        List<LogicalResponse> responses = VaultSecretReader.readAll(new TreeAccessor(), secrets);
+        VaultSecretBindings bindings = VaultSecretBindings.bind("http://vault", secrets, responses, null, new ArrayList<LogicalResponse>());
+
+        assertThat(responses.get(0).getData().get("db/prod/password"), is("s3cret"));
+        assertThat(bindings.getEnv().get("APP_TOKEN"), is("t0k3n"));
+        assertThat(bindings.getEnv().get("DB_PROD_PASSWORD"), is("s3cret"));
+        assertThat(bindings.getValuesToMask(), hasItems("t0k3n", "s3cret"));
+    }
+
+    @Test
+    public void shouldReadFoldersNextToOtherSecrets() throws Exception {
+        VaultSecret tree = new VaultSecret("team/", null);
+        tree.setRecursive(true);
+        VaultSecret app = new VaultSecret("team/app", Collections.singletonList(new VaultSecretValue("TOKEN", "token")));
+
+        List<LogicalResponse> responses = VaultSecretReader.readAll(new TreeAccessor(), Arrays.asList(app, tree));
+
+        assertThat(responses.get(0).getData().get("token"), is("t0k3n"));
+        assertThat(responses.get(1).getData().get("app/token"), is("t0k3n"));
+    }
+
+    @Test
+    public void shouldBindValuesToFiles() throws Exception {
+        VaultSecretValue keystore = new VaultSecretValue("KEYSTORE", "jks");
+        keystore.setFile(true);
+        VaultSecret secret = new VaultSecret("team/app", Arrays.asList(keystore, new VaultSecretValue("USER", "user")));
+        FilePath workspace = new FilePath(temp.newFolder("workspace"));
+
+        VaultSecretBindings bindings = VaultSecretBindings.bind("http://vault", Collections.singletonList(secret),
+                Collections.singletonList(response("{\"jks\":\"k3ystore\",\"user\":\"admin\"}")), workspace, new ArrayList<LogicalResponse>());
+
+        try {
+            File file = new File(bindings.getEnv().get("KEYSTORE"));
+            assertThat(file.getParent(), is(bindings.getFilesDir()));
+            assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), is("k3ystore"));
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())), is("rw-------"));
+            }
+            assertThat(bindings.getEnv().get("USER"), is("admin"));
+            assertThat(bindings.getValuesToMask(), hasItems("k3ystore", "admin"));
+        } finally {
+            VaultSecretFiles.deleteDirectory(workspace, bindings.getFilesDir());
+        }
+        assertThat(new File(bindings.getFilesDir()).exists(), is(false));
+    }
+
+    @Test
+    public void shouldRejectFileOutsideDirectory() throws Exception {
+        VaultSecretValue keystore = new VaultSecretValue("../KEYSTORE", "jks");
+        keystore.setFile(true);
+        VaultSecret secret = new VaultSecret("team/app", Collections.singletonList(keystore));
+        FilePath workspace = new FilePath(temp.newFolder("workspace"));
+
+        try {
+            VaultSecretBindings.bind("http://vault", Collections.singletonList(secret),
+                    Collections.singletonList(response("{\"jks\":\"k3ystore\"}")), workspace, new ArrayList<LogicalResponse>());
+            fail("expected the variable name to be rejected");
+        } catch (VaultPluginException e) {
+            assertThat(e.getMessage(), containsString("../KEYSTORE"));
+        }
+    }
+
+    @Test
+    public void shouldNotCreateDirectoryWithoutFiles() throws Exception {
+        VaultSecret secret = new VaultSecret("team/app", Collections.singletonList(new VaultSecretValue("USER", "user")));
+
+        VaultSecretBindings bindings = VaultSecretBindings.bind("http://vault", Collections.singletonList(secret),
+                Collections.singletonList(response("{\"user\":\"admin\"}")), null, new ArrayList<LogicalResponse>());
+
+        assertThat(bindings.getFilesDir(), is((String) null));
+        assertThat(bindings.getEnv().keySet(), contains("USER"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.datapipe.jenkins.vault;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+public class VaultSecretCacheSpec {
+    private static final VaultAuthToken TOKEN = new VaultAuthToken("token", 3600, true, Arrays.asList("default", "jenkins"));
+
+    private LogicalResponse response(String leaseId, String value) {
+        String body = "{\"lease_id\":\"" + leaseId + "\",\"renewable\":false,\"lease_duration\":0,"
+                + "\"data\":{\"key\":\"" + value + "\"}}";
+        return LogicalResponses.of(body);
+    }
+
+    @Test
+    public void shouldServeCachedResponse() {
+        VaultSecretCache cache = new VaultSecretCache(10);
+
+        cache.put("http://vault", TOKEN, "secret/path", response("", "value"), 60);
+        LogicalResponse cached = cache.get("http://vault",
+                new VaultAuthToken("other-token", 3600, true, Arrays.asList("jenkins", "default")), "secret/path");
+
+        assertThat(cached.getData().get("key"), is("value"));
+    }
+
+    @Test
+    public void shouldNotServeOtherPolicies() {
+        VaultSecretCache cache = new VaultSecretCache(10);
+
+        cache.put("http://vault", TOKEN, "secret/path", response("", "value"), 60);
+
+        assertThat(cache.get("http://vault", new VaultAuthToken("token", 3600, true, Collections.singletonList("default")),
+                "secret/path"), is(nullValue()));
+        assertThat(cache.get("http://other-vault", TOKEN, "secret/path"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldOnlyServeSameTokenWhenPoliciesAreUnknown() {
+        VaultSecretCache cache = new VaultSecretCache(10);
+
+        cache.put("http://vault", new VaultAuthToken("user-token"), "secret/path", response("", "value"), 60);
+
+        assertThat(cache.get("http://vault", new VaultAuthToken("user-token"), "secret/path").getData().get("key"), is("value"));
+        assertThat(cache.get("http://vault", new VaultAuthToken("other-user-token"), "secret/path"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotCacheLeasedResponses() {
+        VaultSecretCache cache = new VaultSecretCache(10);
+
+        cache.put("http://vault", TOKEN, "database/creds/role", response("database/creds/role/1234", "value"), 60);
+
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        VaultSecretCache cache = new VaultSecretCache(2);
+
+        cache.put("http://vault", TOKEN, "secret/first", response("", "first"), 60);
+        cache.put("http://vault", TOKEN, "secret/second", response("", "second"), 60);
+        cache.get("http://vault", TOKEN, "secret/first");
+        cache.put("http://vault", TOKEN, "secret/third", response("", "third"), 60);
+
+        assertThat(cache.get("http://vault", TOKEN, "secret/second"), is(nullValue()));
+        assertThat(cache.get("http://vault", TOKEN, "secret/first").getData().get("key"), is("first"));
+    }
+}
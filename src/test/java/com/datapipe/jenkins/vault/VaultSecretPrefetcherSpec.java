@@ -0,0 +1,141 @@
+package com.datapipe.jenkins.vault;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.VaultSecretPrefetcher.Prefetched;
+import com.datapipe.jenkins.vault.credentials.VaultAuthToken;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+
+public class VaultSecretPrefetcherSpec {
+    private static final String URL = "http://vault";
+
+    private final VaultCredential credential = mock(VaultCredential.class);
+
+    /**
+     * Records expiry and revocations instead of scheduling them.
+     */
+    private static class TestPrefetcher extends VaultSecretPrefetcher {
+        final List<Long> expiryDelays = new ArrayList<>();
+        final List<Prefetched> revoked = new ArrayList<>();
+
+        @Override
+        void expireAfter(long queueId, long delayMillis) {
+            expiryDelays.add(delayMillis);
+        }
+
+        @Override
+        void revoke(Prefetched result) {
+            revoked.add(result);
+        }
+    }
+
+    private Prefetched prefetched(VaultCredential credential) {
+        LogicalResponse response = mock(LogicalResponse.class);
+        when(response.getLeaseId()).thenReturn("database/creds/1");
+        return new Prefetched("job", URL, credential, Collections.singletonList(response), new VaultAuthToken("token"));
+    }
+
+    private static Callable<Prefetched> returning(final Prefetched result) {
+        return new Callable<Prefetched>() {
+            @Override
+            public Prefetched call() {
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void shouldExpireAfterTwoMinutes() {
+        TestPrefetcher prefetcher = new TestPrefetcher();
+
+        prefetcher.prefetch(1, returning(prefetched(credential)));
+        prefetcher.prefetch(1, returning(prefetched(credential)));
+
+        assertThat(VaultSecretPrefetcher.TTL, is(TimeUnit.MINUTES.toMillis(2)));
+        assertThat(prefetcher.expiryDelays, contains(VaultSecretPrefetcher.TTL));
+    }
+
+    @Test
+    public void shouldHandOutMatchingResultOnce() throws Exception {
+        TestPrefetcher prefetcher = new TestPrefetcher();
+        Prefetched result = prefetched(credential);
+        prefetcher.prefetch(1, returning(result));
+
+        assertThat(prefetcher.take(1, URL, credential), is(sameInstance(result)));
+        assertThat(prefetcher.take(1, URL, credential), is(nullValue()));
+        assertThat(prefetcher.revoked.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldRevokeResultForOtherUrl() throws Exception {
+        TestPrefetcher prefetcher = new TestPrefetcher();
+        Prefetched result = prefetched(credential);
+        prefetcher.prefetch(1, returning(result));
+
+        assertThat(prefetcher.take(1, "http://other-vault", credential), is(nullValue()));
+        assertThat(prefetcher.revoked, contains(result));
+    }
+
+    @Test
+    public void shouldRevokeResultForOtherCredential() throws Exception {
+        TestPrefetcher prefetcher = new TestPrefetcher();
+        Prefetched result = prefetched(credential);
+        prefetcher.prefetch(1, returning(result));
+
+        assertThat(prefetcher.take(1, URL, mock(VaultCredential.class)), is(nullValue()));
+        assertThat(prefetcher.revoked, contains(result));
+    }
+
+    @Test
+    public void shouldLetBuildReadItselfWhenFetchFailed() throws Exception {
+        TestPrefetcher prefetcher = new TestPrefetcher();
+        prefetcher.prefetch(1, new Callable<Prefetched>() {
+            @Override
+            public Prefetched call() {
+                throw new VaultPluginException("could not log in into vault");
+            }
+        });
+
+        assertThat(prefetcher.take(1, URL, credential), is(nullValue()));
+        assertThat(prefetcher.revoked.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldRevokeResultThatIsNeverTaken() throws Exception {
+        TestPrefetcher prefetcher = new TestPrefetcher();
+        final CountDownLatch fetched = new CountDownLatch(1);
+        final Prefetched result = prefetched(credential);
+        prefetcher.prefetch(1, new Callable<Prefetched>() {
+            @Override
+            public Prefetched call() {
+                fetched.countDown();
+                return result;
+            }
+        });
+        fetched.await();
+        // the future completes right after the fetch returned
+        Thread.sleep(100);
+
+        prefetcher.discard(1);
+
+        assertThat(prefetcher.revoked, contains(result));
+        assertThat(prefetcher.take(1, URL, credential), is(nullValue()));
+    }
+}
@@ -0,0 +1,120 @@
+package com.datapipe.jenkins.vault;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class VaultSecretReaderSpec {
+
+    private static LogicalResponse response(String path) {
+        return LogicalResponses.of("{\"data\":{\"path\":\"" + path + "\"}}");
+    }
+
+    private static List<VaultSecret> secrets(int count) {
+        List<VaultSecret> secrets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            secrets.add(new VaultSecret("secret/" + i, null));
+        }
+        return secrets;
+    }
+
+    private static int index(String path) {
+        return Integer.parseInt(path.substring("secret/".length()));
+    }
+
+    @Test
+    public void shouldReturnResponsesInDeclarationOrder() throws Exception {
+        VaultAccessor accessor = new VaultAccessor() {
+            @Override
+            public LogicalResponse read(String path) {
+                try {
+                    // later paths finish first
+                    Thread.sleep(10L * (10 - index(path)));
+                } catch (InterruptedException e) {
+                    throw new VaultPluginException("interrupted", e);
+                }
+                return response(path);
+            }
+        };
+
+        List<LogicalResponse> responses = VaultSecretReader.readAll(accessor, secrets(10));
+
+        assertThat(responses.size(), is(10));
+        for (int i = 0; i < 10; i++) {
+            assertThat(responses.get(i).getData().get("path"), is("secret/" + i));
+        }
+    }
+
+    @Test
+    public void shouldCancelRemainingReadsOnFirstFailure() throws Exception {
+        final AtomicInteger started = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(VaultSecretReader.MAX_CONCURRENT_READS - 1);
+        VaultAccessor accessor = new VaultAccessor() {
+            @Override
+            public LogicalResponse read(String path) {
+                started.incrementAndGet();
+                if (index(path) == 0) {
+                    throw new VaultPluginException("permission denied at path: " + path);
+                }
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new VaultPluginException("interrupted", e);
+                }
+                return response(path);
+            }
+        };
+
+        try {
+            VaultSecretReader.readAll(accessor, secrets(4 * VaultSecretReader.MAX_CONCURRENT_READS));
+            fail("the failed read should fail readAll");
+        } catch (VaultPluginException e) {
+            assertThat(e.getMessage(), is("permission denied at path: secret/0"));
+        }
+
+        // the reads that were running are interrupted, the queued ones never start
+        assertThat(interrupted.await(10, TimeUnit.SECONDS), is(true));
+        Thread.sleep(100);
+        assertThat(started.get(), lessThanOrEqualTo(VaultSecretReader.MAX_CONCURRENT_READS + 1));
+    }
+
+    @Test
+    public void shouldNotExceedConcurrentReadLimit() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        VaultAccessor accessor = new VaultAccessor() {
+            @Override
+            public LogicalResponse read(String path) {
+                int now = running.incrementAndGet();
+                maxRunning.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new VaultPluginException("interrupted", e);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return response(path);
+            }
+        };
+
+        VaultSecretReader.readAll(accessor, secrets(5 * VaultSecretReader.MAX_CONCURRENT_READS));
+
+        assertThat(maxRunning.get(), greaterThan(1));
+        assertThat(maxRunning.get(), lessThanOrEqualTo(VaultSecretReader.MAX_CONCURRENT_READS));
+    }
+}
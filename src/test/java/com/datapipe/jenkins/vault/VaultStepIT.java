@@ -0,0 +1,121 @@
+package com.datapipe.jenkins.vault;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.datapipe.jenkins.vault.it.VaultConfigurationIT;
+
+import hudson.model.Result;
+
+public class VaultStepIT {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private static final Pattern FILE_PATH = Pattern.compile("secret file at (\\S+)");
+
+    private WorkflowJob pipeline;
+
+    @Before
+    public void setupJenkins() throws Exception {
+        SystemCredentialsProvider.getInstance().setDomainCredentialsMap(Collections.singletonMap(Domain.global(),
+                Arrays.<Credentials>asList(VaultConfigurationIT.createTokenCredential("cred"))));
+        VaultStepWithMockAccessor.blockReads = null;
+        VaultStepWithMockAccessor.readStarted = new CountDownLatch(1);
+        pipeline = jenkins.createProject(WorkflowJob.class, "Pipeline");
+    }
+
+    @After
+    public void releaseReads() {
+        CountDownLatch block = VaultStepWithMockAccessor.blockReads;
+        if (block != null) {
+            block.countDown();
+        }
+    }
+
+    private void definePipeline(String body) {
+        pipeline.setDefinition(new CpsFlowDefinition("node {\n" +
+                "    withMockVault(configuration: [$class: 'VaultConfiguration', \n" +
+                "                           vaultCredentialId: 'cred', \n" +
+                "                           vaultUrl: 'http://localhost:1'], \n" +
+                "                  vaultSecrets: [\n" +
+                "                       [$class: 'VaultSecret', path: 'secret/path1', secretValues: [\n" +
+                "                       [$class: 'VaultSecretValue', envVar: 'envVar1', vaultKey: 'key1'],\n" +
+                "                       [$class: 'VaultSecretValue', envVar: 'FILE1', vaultKey: 'key1', file: true]]]]) {\n" +
+                "        sh 'echo $envVar1'\n" +
+                "        echo \"secret file at ${env.FILE1}\"\n" +
+                "        sh 'cat \"$FILE1\"'\n" +
+                body +
+                "    }\n" +
+                "}", true));
+    }
+
+    private File secretFile(WorkflowRun build) throws Exception {
+        Matcher matcher = FILE_PATH.matcher(JenkinsRule.getLog(build));
+        assertThat("log names the secret file", matcher.find(), is(true));
+        return new File(matcher.group(1));
+    }
+
+    private void assertCleanedUp(WorkflowRun build) throws Exception {
+        assertThat(secretFile(build).exists(), is(false));
+        assertThat(VaultLeaseManager.get().getTrackedCount(), is(0));
+        // Vault is not reachable here, so the revocation stays queued
+        assertThat(VaultLeaseRevoker.get().getPendingCount(), is(1));
+    }
+
+    @Test
+    public void shouldBindAndMaskSecretsAndCleanUp() throws Exception {
+        definePipeline("");
+
+        WorkflowRun build = jenkins.assertBuildStatus(Result.SUCCESS, pipeline.scheduleBuild2(0).get());
+
+        jenkins.assertLogContains("echo ****", build);
+        jenkins.assertLogNotContains("some-secret", build);
+        assertCleanedUp(build);
+    }
+
+    @Test
+    public void shouldCleanUpWhenBodyFails() throws Exception {
+        definePipeline("        error 'body failed'\n");
+
+        WorkflowRun build = jenkins.assertBuildStatus(Result.FAILURE, pipeline.scheduleBuild2(0).get());
+
+        jenkins.assertLogContains("body failed", build);
+        jenkins.assertLogNotContains("some-secret", build);
+        assertCleanedUp(build);
+    }
+
+    @Test
+    public void shouldStopWhileReadingSecrets() throws Exception {
+        VaultStepWithMockAccessor.blockReads = new CountDownLatch(1);
+        definePipeline("");
+
+        WorkflowRun build = pipeline.scheduleBuild2(0).waitForStart();
+        assertThat(VaultStepWithMockAccessor.readStarted.await(30, TimeUnit.SECONDS), is(true));
+        build.doStop();
+        jenkins.waitForCompletion(build);
+
+        jenkins.assertBuildStatus(Result.ABORTED, build);
+        jenkins.assertLogNotContains("secret file at", build);
+        assertThat(VaultLeaseManager.get().getTrackedCount(), is(0));
+    }
+}
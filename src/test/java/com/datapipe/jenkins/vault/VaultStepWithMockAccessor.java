@@ -0,0 +1,104 @@
+package com.datapipe.jenkins.vault;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.CheckForNull;
+
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import com.bettercloud.vault.response.LogicalResponse;
+import com.datapipe.jenkins.vault.credentials.VaultCredential;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import com.datapipe.jenkins.vault.model.VaultSecret;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+/*
+This class is only used for testing the withVault step - the accessor is created
+ by the step itself, so we can not inject a mock from the Jenkinsfile.
+ */
+public class VaultStepWithMockAccessor extends VaultStep {
+    public static final String LEASE_ID = "database/creds/role/1";
+
+    /** Set to make reads wait until it is counted down. */
+    static volatile CountDownLatch blockReads;
+
+    static volatile CountDownLatch readStarted = new CountDownLatch(1);
+
+    @DataBoundConstructor
+    public VaultStepWithMockAccessor(@CheckForNull List<VaultSecret> vaultSecrets) {
+        super(vaultSecrets);
+    }
+
+    @Override
+    VaultAccessor newAccessor() {
+        return new VaultAccessor() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void init(String url) {
+            }
+
+            @Override
+            public void auth(VaultCredential vaultCredential) {
+            }
+
+            @Override
+            public LogicalResponse read(String path) {
+                readStarted.countDown();
+                CountDownLatch block = blockReads;
+                if (block != null) {
+                    try {
+                        block.await();
+                    } catch (InterruptedException e) {
+                        throw new VaultPluginException("interrupted while reading " + path, e);
+                    }
+                }
+                Map<String, String> data = new HashMap<>();
+                data.put("key1", "some-secret");
+                LogicalResponse resp = mock(LogicalResponse.class);
+                when(resp.getData()).thenReturn(data);
+                when(resp.getLeaseId()).thenReturn(LEASE_ID);
+                when(resp.getLeaseDuration()).thenReturn(3600L);
+                when(resp.getRenewable()).thenReturn(true);
+                return resp;
+            }
+        };
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends StepDescriptor {
+        @Override
+        public String getFunctionName() {
+            return "withMockVault";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Vault Mock Plugin";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return true;
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Collections.unmodifiableSet(new HashSet<Class<?>>(Arrays.asList(Run.class, TaskListener.class)));
+        }
+    }
+}
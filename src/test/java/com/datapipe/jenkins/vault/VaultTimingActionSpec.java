@@ -0,0 +1,35 @@
+package com.datapipe.jenkins.vault;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class VaultTimingActionSpec {
+
+    @Test
+    public void shouldKeepStepsInRecordedOrder() {
+        VaultTimingAction action = new VaultTimingAction();
+
+        action.add(VaultTimingAction.AUTH, 12);
+        action.add(VaultTimingAction.READ + "secret/path", 30);
+        action.add(VaultTimingAction.REVOKE, 5);
+
+        List<VaultTimingAction.Timing> timings = action.getTimings();
+        assertThat(timings.size(), is(3));
+        assertThat(timings.get(1).getStep(), is("read secret/path"));
+        assertThat(timings.get(1).getMillis(), is(30));
+        assertThat(action.getTotalMillis(), is(47L));
+    }
+
+    @Test
+    public void shouldRecordElapsedTime() {
+        VaultTimingAction action = new VaultTimingAction();
+
+        action.record(VaultTimingAction.CONFIGURATION, System.nanoTime() - 2000000L);
+
+        assertThat(action.getTimings().get(0).getMillis() >= 2, is(true));
+    }
+}
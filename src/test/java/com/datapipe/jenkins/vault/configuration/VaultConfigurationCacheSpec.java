@@ -0,0 +1,159 @@
+package com.datapipe.jenkins.vault.configuration;
+
+import hudson.model.Item;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.datapipe.jenkins.vault.configuration.VaultConfigurationSpec.completeTestConfig;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VaultConfigurationCacheSpec {
+
+    private Item job() {
+        return mock(Item.class);
+    }
+
+    private VaultConfigResolver resolverReturning(VaultConfiguration configuration) {
+        VaultConfigResolver resolver = mock(VaultConfigResolver.class);
+        when(resolver.forJob(any(Item.class))).thenReturn(configuration);
+        return resolver;
+    }
+
+    @Test
+    public void shouldResolveOncePerJob() {
+        VaultConfigurationCache cache = new VaultConfigurationCache();
+        Item job = job();
+        VaultConfigResolver resolver = resolverReturning(completeTestConfig("folder"));
+        List<VaultConfigResolver> resolvers = Collections.singletonList(resolver);
+
+        cache.resolve(job, resolvers);
+        VaultConfiguration result = cache.resolve(job, resolvers);
+
+        assertThat(result.getVaultUrl(), is(completeTestConfig("folder").getVaultUrl()));
+        verify(resolver, times(1)).forJob(any(Item.class));
+    }
+
+    @Test
+    public void shouldResolveAgainForOtherJob() {
+        VaultConfigurationCache cache = new VaultConfigurationCache();
+        Item first = job();
+        Item second = job();
+        VaultConfigResolver resolver = mock(VaultConfigResolver.class);
+        when(resolver.forJob(first)).thenReturn(completeTestConfig("first"));
+        when(resolver.forJob(second)).thenReturn(completeTestConfig("second"));
+        List<VaultConfigResolver> resolvers = Collections.singletonList(resolver);
+
+        cache.resolve(first, resolvers);
+        VaultConfiguration result = cache.resolve(second, resolvers);
+
+        assertThat(result.getVaultUrl(), is(completeTestConfig("second").getVaultUrl()));
+        verify(resolver, times(2)).forJob(any(Item.class));
+    }
+
+    @Test
+    public void shouldResolveAgainAfterInvalidation() {
+        VaultConfigurationCache cache = new VaultConfigurationCache();
+        Item job = job();
+        VaultConfigResolver resolver = resolverReturning(completeTestConfig("folder"));
+        List<VaultConfigResolver> resolvers = Collections.singletonList(resolver);
+
+        cache.resolve(job, resolvers);
+        cache.invalidateAll();
+        cache.resolve(job, resolvers);
+
+        verify(resolver, times(2)).forJob(any(Item.class));
+    }
+
+    @Test
+    public void shouldKeepEntriesWhenFolderSavedWithSameConfiguration() {
+        VaultConfigurationCache cache = new VaultConfigurationCache();
+        Item folder = mock(Item.class);
+        VaultConfiguration folderConfig = completeTestConfig("folder");
+        cache.folderSaved(folder, folderConfig);
+        cache.resolve(job(), Collections.singletonList(resolverReturning(folderConfig)));
+
+        cache.folderSaved(folder, folderConfig);
+
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void shouldDropEntriesWhenFolderConfigurationChanges() {
+        VaultConfigurationCache cache = new VaultConfigurationCache();
+        Item folder = mock(Item.class);
+        cache.folderSaved(folder, null);
+        cache.resolve(job(), Collections.singletonList(resolverReturning(null)));
+
+        cache.folderSaved(folder, completeTestConfig("folder"));
+
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void shouldDropEntriesOnFirstSaveOfFolder() {
+        VaultConfigurationCache cache = new VaultConfigurationCache();
+        cache.resolve(job(), Collections.singletonList(resolverReturning(null)));
+
+        cache.folderSaved(mock(Item.class), null);
+
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void shouldMergeResolversInOrder() {
+        VaultConfigurationCache cache = new VaultConfigurationCache();
+        VaultConfiguration folderConfig = new VaultConfiguration(null, "folder-credential");
+        VaultConfiguration globalConfig = completeTestConfig("global");
+
+        VaultConfiguration result = cache.resolve(job(),
+                Arrays.asList(resolverReturning(folderConfig), resolverReturning(globalConfig)));
+
+        assertThat(result.getVaultCredentialId(), is("folder-credential"));
+        assertThat(result.getVaultUrl(), is(globalConfig.getVaultUrl()));
+    }
+
+    @Test
+    public void shouldReturnCopies() {
+        VaultConfigurationCache cache = new VaultConfigurationCache();
+        Item job = job();
+        VaultConfiguration folderConfig = completeTestConfig("folder");
+        List<VaultConfigResolver> resolvers = Collections.singletonList(resolverReturning(folderConfig));
+
+        VaultConfiguration first = cache.resolve(job, resolvers);
+        first.setVaultUrl("http://changed");
+        VaultConfiguration second = cache.resolve(job, resolvers);
+
+        assertThat(first, is(not(sameInstance(folderConfig))));
+        assertThat(second.getVaultUrl(), is(folderConfig.getVaultUrl()));
+    }
+
+    @Test
+    public void shouldCacheAbsentConfiguration() {
+        VaultConfigurationCache cache = new VaultConfigurationCache();
+        Item job = job();
+        VaultConfigResolver resolver = resolverReturning(null);
+        List<VaultConfigResolver> resolvers = Collections.singletonList(resolver);
+
+        cache.resolve(job, resolvers);
+        VaultConfiguration result = cache.resolve(job, resolvers);
+
+        assertThat(result, is(nullValue()));
+        verify(resolver, times(1)).forJob(any(Item.class));
+        assertThat(cache.size(), is(1));
+    }
+}
@@ -0,0 +1,146 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class GoogleIdentityTokenCacheSpec {
+    private HttpServer metadataServer;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long tokenLifetimeSeconds = 3600;
+
+    private static String jwt(long exp) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(("{\"aud\":\"vault/jenkins\",\"exp\":" + exp + "}").getBytes(StandardCharsets.UTF_8))
+                + ".signature";
+    }
+
+    @Before
+    public void startMetadataServer() throws IOException {
+        metadataServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        metadataServer.createContext("/computeMetadata/v1/instance/service-accounts/default/identity", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                try {
+                    // slow enough for concurrent logins to overlap
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                boolean flavored = "Google".equals(exchange.getRequestHeaders().getFirst("Metadata-Flavor"));
+                byte[] body = jwt(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + tokenLifetimeSeconds)
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(flavored ? 200 : 403, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        metadataServer.setExecutor(Executors.newCachedThreadPool());
+        metadataServer.start();
+    }
+
+    @After
+    public void stopMetadataServer() {
+        metadataServer.stop(0);
+    }
+
+    private GoogleIdentityTokenCache cache() {
+        return new GoogleIdentityTokenCache("http://127.0.0.1:" + metadataServer.getAddress().getPort());
+    }
+
+    @Test
+    public void shouldReuseTokenUntilItIsDue() throws IOException {
+        GoogleIdentityTokenCache cache = cache();
+
+        String first = cache.jwt("vault/jenkins");
+        String second = cache.jwt("vault/jenkins");
+
+        assertThat(second, is(first));
+        assertThat(requests.get(), is(1));
+    }
+
+    @Test
+    public void shouldFetchTokenPerAudience() throws IOException {
+        GoogleIdentityTokenCache cache = cache();
+
+        cache.jwt("vault/jenkins");
+        cache.jwt("vault/other");
+
+        assertThat(requests.get(), is(2));
+    }
+
+    @Test
+    public void shouldRefreshTokenNearExpiry() throws IOException {
+        tokenLifetimeSeconds = 60;
+        GoogleIdentityTokenCache cache = cache();
+
+        cache.jwt("vault/jenkins");
+        cache.jwt("vault/jenkins");
+
+        assertThat(requests.get(), is(2));
+    }
+
+    @Test
+    public void shouldFetchAgainAfterInvalidation() throws IOException {
+        GoogleIdentityTokenCache cache = cache();
+
+        cache.jwt("vault/jenkins");
+        cache.invalidate("vault/jenkins");
+        cache.jwt("vault/jenkins");
+
+        assertThat(requests.get(), is(2));
+    }
+
+    @Test
+    public void shouldFetchOnceForConcurrentLogins() throws Exception {
+        final GoogleIdentityTokenCache cache = cache();
+        ExecutorService logins = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> jwts = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                jwts.add(logins.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        return cache.jwt("vault/jenkins");
+                    }
+                }));
+            }
+            String first = jwts.get(0).get();
+            for (Future<String> jwt : jwts) {
+                assertThat(jwt.get(), is(first));
+            }
+        } finally {
+            logins.shutdownNow();
+        }
+
+        assertThat(requests.get(), is(1));
+    }
+
+    @Test
+    public void shouldReadExpiryFromClaims() {
+        assertThat(GoogleIdentityTokenCache.expiresAt(jwt(1500000000L)), is(1500000000000L));
+    }
+}
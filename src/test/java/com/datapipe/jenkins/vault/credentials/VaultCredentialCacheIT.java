@@ -0,0 +1,61 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.acegisecurity.Authentication;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+import org.jvnet.hudson.test.TestExtension;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.util.Secret;
+
+public class VaultCredentialCacheIT {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void shouldNotShareCredentialsOfJobsInSameFolder() throws Exception {
+        MockFolder folder = jenkins.createFolder("folder");
+        FreeStyleProject first = folder.createProject(FreeStyleProject.class, "first");
+        FreeStyleProject second = folder.createProject(FreeStyleProject.class, "second");
+
+        VaultCredential firstCredential = VaultCredentialCache.get().lookup(first, "per-job");
+        VaultCredential secondCredential = VaultCredentialCache.get().lookup(second, "per-job");
+
+        assertThat(((VaultTokenCredential) firstCredential).getToken(), is("token of folder/first"));
+        assertThat(((VaultTokenCredential) secondCredential).getToken(), is("token of folder/second"));
+        assertThat(VaultCredentialCache.get().lookup(first, "per-job"), sameInstance(firstCredential));
+    }
+
+    /**
+     * Hands each job a credential of its own under the same id.
+     */
+    @TestExtension("shouldNotShareCredentialsOfJobsInSameFolder")
+    public static class PerJobCredentialsProvider extends CredentialsProvider {
+        @Override
+        public <C extends Credentials> List<C> getCredentials(Class<C> type, ItemGroup itemGroup, Authentication authentication) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public <C extends Credentials> List<C> getCredentials(Class<C> type, Item item, Authentication authentication) {
+            VaultTokenCredential credential = new VaultTokenCredential(CredentialsScope.GLOBAL, "per-job", "",
+                    Secret.fromString("token of " + item.getFullName()));
+            return type.isInstance(credential) ? Collections.singletonList(type.cast(credential)) : Collections.<C>emptyList();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import com.cloudbees.plugins.credentials.CredentialsUnavailableException;
+import hudson.model.ItemGroup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VaultCredentialCacheSpec {
+
+    private VaultCredential credential(String id) {
+        VaultCredential credential = mock(VaultCredential.class);
+        when(credential.getId()).thenReturn(id);
+        return credential;
+    }
+
+    private VaultCredentialCache.Lookup lookupReturning(VaultCredential... credentials) {
+        VaultCredentialCache.Lookup lookup = mock(VaultCredentialCache.Lookup.class);
+        when(lookup.credentials()).thenReturn(Arrays.asList(credentials));
+        return lookup;
+    }
+
+    @Test
+    public void shouldLookUpOncePerItemGroupAndId() {
+        VaultCredentialCache cache = new VaultCredentialCache();
+        ItemGroup folder = mock(ItemGroup.class);
+        VaultCredential credential = credential("cred");
+        VaultCredentialCache.Lookup lookup = lookupReturning(credential(""), credential);
+
+        cache.lookup(folder, "cred", lookup);
+        VaultCredential result = cache.lookup(folder, "cred", lookup);
+
+        assertThat(result, is(sameInstance(credential)));
+        verify(lookup, times(1)).credentials();
+    }
+
+    @Test
+    public void shouldLookUpAgainForOtherItemGroup() {
+        VaultCredentialCache cache = new VaultCredentialCache();
+        VaultCredentialCache.Lookup lookup = lookupReturning(credential("cred"));
+
+        cache.lookup(mock(ItemGroup.class), "cred", lookup);
+        cache.lookup(mock(ItemGroup.class), "cred", lookup);
+
+        verify(lookup, times(2)).credentials();
+    }
+
+    @Test
+    public void shouldLookUpAgainAfterInvalidation() {
+        VaultCredentialCache cache = new VaultCredentialCache();
+        ItemGroup folder = mock(ItemGroup.class);
+        VaultCredential updated = credential("cred");
+
+        cache.lookup(folder, "cred", lookupReturning(credential("cred")));
+        cache.invalidateAll();
+        VaultCredential result = cache.lookup(folder, "cred", lookupReturning(updated));
+
+        assertThat(result, is(sameInstance(updated)));
+    }
+
+    @Test
+    public void shouldNotCacheUnknownIds() {
+        VaultCredentialCache cache = new VaultCredentialCache();
+        ItemGroup folder = mock(ItemGroup.class);
+        VaultCredential added = credential("cred");
+        VaultCredentialCache.Lookup empty = mock(VaultCredentialCache.Lookup.class);
+        when(empty.credentials()).thenReturn(Collections.<VaultCredential>emptyList());
+
+        try {
+            cache.lookup(folder, "cred", empty);
+            fail("expected CredentialsUnavailableException");
+        } catch (CredentialsUnavailableException e) {
+            // expected
+        }
+        VaultCredential result = cache.lookup(folder, "cred", lookupReturning(added));
+
+        assertThat(result, is(sameInstance(added)));
+    }
+}
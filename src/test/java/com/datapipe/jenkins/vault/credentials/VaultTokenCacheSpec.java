@@ -0,0 +1,89 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import com.bettercloud.vault.Vault;
+import com.bettercloud.vault.VaultConfig;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VaultTokenCacheSpec {
+
+    private VaultCredential credentialReturning(String id, VaultAuthToken token) {
+        VaultCredential credential = mock(VaultCredential.class);
+        when(credential.getId()).thenReturn(id);
+        when(credential.authenticate(any(Vault.class), any(VaultConfig.class))).thenReturn(token);
+        return credential;
+    }
+
+    @Test
+    public void shouldLogInOnlyOncePerCredentialAndUrl() {
+        VaultTokenCache cache = new VaultTokenCache();
+        VaultAuthToken token = new VaultAuthToken("token", 3600, true);
+        VaultCredential credential = credentialReturning("cred", token);
+
+        VaultAuthToken first = cache.authenticate("http://vault", credential, mock(Vault.class), mock(VaultConfig.class));
+        VaultAuthToken second = cache.authenticate("http://vault", credential, mock(Vault.class), mock(VaultConfig.class));
+
+        assertThat(first, is(sameInstance(token)));
+        assertThat(second, is(sameInstance(token)));
+        verify(credential, times(1)).authenticate(any(Vault.class), any(VaultConfig.class));
+    }
+
+    @Test
+    public void shouldLogInAgainForOtherUrl() {
+        VaultTokenCache cache = new VaultTokenCache();
+        VaultCredential credential = credentialReturning("cred", new VaultAuthToken("token", 3600, true));
+
+        cache.authenticate("http://vault-1", credential, mock(Vault.class), mock(VaultConfig.class));
+        cache.authenticate("http://vault-2", credential, mock(Vault.class), mock(VaultConfig.class));
+
+        verify(credential, times(2)).authenticate(any(Vault.class), any(VaultConfig.class));
+    }
+
+    @Test
+    public void shouldLogInAgainWhenCredentialWasUpdated() {
+        VaultTokenCache cache = new VaultTokenCache();
+        VaultCredential original = credentialReturning("cred", new VaultAuthToken("token", 3600, true));
+        VaultCredential updated = credentialReturning("cred", new VaultAuthToken("other-token", 3600, true));
+
+        cache.authenticate("http://vault", original, mock(Vault.class), mock(VaultConfig.class));
+        VaultAuthToken result = cache.authenticate("http://vault", updated, mock(Vault.class), mock(VaultConfig.class));
+
+        assertThat(result.getToken(), is("other-token"));
+        verify(updated, times(1)).authenticate(any(Vault.class), any(VaultConfig.class));
+    }
+
+    @Test
+    public void shouldNotCacheTokensWithoutLease() {
+        VaultTokenCache cache = new VaultTokenCache();
+        VaultCredential credential = credentialReturning("cred", new VaultAuthToken("token"));
+
+        cache.authenticate("http://vault", credential, mock(Vault.class), mock(VaultConfig.class));
+        cache.authenticate("http://vault", credential, mock(Vault.class), mock(VaultConfig.class));
+
+        assertThat(cache.size(), is(0));
+        verify(credential, times(2)).authenticate(any(Vault.class), any(VaultConfig.class));
+    }
+
+    @Test
+    public void shouldLogInAgainAfterInvalidation() {
+        VaultTokenCache cache = new VaultTokenCache();
+        VaultCredential credential = credentialReturning("cred", new VaultAuthToken("token", 3600, true));
+
+        cache.authenticate("http://vault", credential, mock(Vault.class), mock(VaultConfig.class));
+        cache.invalidateAll();
+        cache.authenticate("http://vault", credential, mock(Vault.class), mock(VaultConfig.class));
+
+        verify(credential, times(2)).authenticate(any(Vault.class), any(VaultConfig.class));
+    }
+}
@@ -0,0 +1,67 @@
+package com.datapipe.jenkins.vault.credentials;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.datapipe.jenkins.vault.exception.VaultPluginException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class VaultTokenFileCredentialSpec {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(File file, String token, long lastModified) throws IOException {
+        Files.write(file.toPath(), token.getBytes(Charset.defaultCharset()));
+        file.setLastModified(lastModified);
+    }
+
+    @Test
+    public void shouldKeepTokenWhileFileIsUnchanged() throws IOException {
+        File file = folder.newFile("token");
+        write(file, "first\n", 1000000L);
+        VaultTokenFileCredential credential = new VaultTokenFileCredential(CredentialsScope.GLOBAL, "id", "", file.getPath());
+
+        assertThat(credential.tokenAt(0), is("first"));
+        // not even checked within the interval
+        write(file, "second", 2000000L);
+        assertThat(credential.tokenAt(VaultTokenFileCredential.CHECK_INTERVAL - 1), is("first"));
+    }
+
+    @Test
+    public void shouldReloadChangedFile() throws IOException {
+        File file = folder.newFile("token");
+        write(file, "first", 1000000L);
+        VaultTokenFileCredential credential = new VaultTokenFileCredential(CredentialsScope.GLOBAL, "id", "", file.getPath());
+        assertThat(credential.tokenAt(0), is("first"));
+
+        write(file, "rotated", 2000000L);
+
+        assertThat(credential.tokenAt(VaultTokenFileCredential.CHECK_INTERVAL), is("rotated"));
+    }
+
+    @Test
+    public void shouldReloadRotationKeepingTimeAndSizeAfterMaxAge() throws IOException {
+        File file = folder.newFile("token");
+        write(file, "first", 1000000L);
+        VaultTokenFileCredential credential = new VaultTokenFileCredential(CredentialsScope.GLOBAL, "id", "", file.getPath());
+        assertThat(credential.tokenAt(0), is("first"));
+
+        write(file, "other", 1000000L);
+
+        assertThat(credential.tokenAt(VaultTokenFileCredential.CHECK_INTERVAL), is("first"));
+        assertThat(credential.tokenAt(VaultTokenFileCredential.MAX_AGE), is("other"));
+    }
+
+    @Test(expected = VaultPluginException.class)
+    public void shouldFailForMissingFile() {
+        new VaultTokenFileCredential(CredentialsScope.GLOBAL, "id", "", new File(folder.getRoot(), "missing").getPath()).getToken();
+    }
+}
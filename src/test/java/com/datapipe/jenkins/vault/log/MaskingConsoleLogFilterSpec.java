@@ -9,6 +9,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -70,6 +71,66 @@ public class MaskingConsoleLogFilterSpec {
         assertThat(resultingLines[1], is("This is veryverysecret test."));
     }
 
+    @Test
+    public void shouldMaskSecretsAddedAfterDecoration() throws Exception {
+        List<String> secrets = new ArrayList<>();
+        MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(), secrets);
+        ByteArrayOutputStream resultingLog = new ByteArrayOutputStream();
+
+        OutputStream maskingLogger = filter.decorateLogger(mock(Run.class), resultingLog);
+
+        maskingLogger.write("This is secret test.\n".getBytes(StandardCharsets.UTF_8));
+        secrets.add("secret");
+        maskingLogger.write("This is secret test.\n".getBytes(StandardCharsets.UTF_8));
+
+        String[] resultingLines = resultingLog.toString(StandardCharsets.UTF_8.name()).split("\\n");
+
+        assertThat(resultingLines[0], is("This is secret test."));
+        assertThat(resultingLines[1], is("This is **** test."));
+    }
+
+    @Test
+    public void shouldIgnoreEmptySecrets() throws Exception {
+        MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(), Arrays.asList("", "secret"));
+        ByteArrayOutputStream resultingLog = new ByteArrayOutputStream();
+
+        OutputStream maskingLogger = filter.decorateLogger(mock(Run.class), resultingLog);
+
+        maskingLogger.write("This is secret test.\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(resultingLog.toString(StandardCharsets.UTF_8.name()), is("This is **** test.\n"));
+    }
+
+    @Test
+    public void shouldMaskSecretsSpanningLinesAndWrites() throws Exception {
+        String key = "-----BEGIN KEY-----\nabcdef\n-----END KEY-----";
+        MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(), Arrays.asList(key));
+        ByteArrayOutputStream resultingLog = new ByteArrayOutputStream();
+
+        OutputStream maskingLogger = filter.decorateLogger(mock(Run.class), resultingLog);
+
+        maskingLogger.write("key:\n-----BEGIN KEY-----\nabc".getBytes(StandardCharsets.UTF_8));
+        maskingLogger.write("def\n-----END KEY-----\ndone\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(resultingLog.toString(StandardCharsets.UTF_8.name()), is("key:\n****\ndone\n"));
+    }
+
+    @Test
+    public void shouldOnlyHoldBackPossibleSecretPrefix() throws Exception {
+        MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(), Arrays.asList("secret"));
+        ByteArrayOutputStream resultingLog = new ByteArrayOutputStream();
+
+        OutputStream maskingLogger = filter.decorateLogger(mock(Run.class), resultingLog);
+
+        maskingLogger.write("a line without end, sec".getBytes(StandardCharsets.UTF_8));
+        maskingLogger.flush();
+        assertThat(resultingLog.toString(StandardCharsets.UTF_8.name()), is("a line without end, "));
+
+        maskingLogger.write("ond".getBytes(StandardCharsets.UTF_8));
+        maskingLogger.close();
+        assertThat(resultingLog.toString(StandardCharsets.UTF_8.name()), is("a line without end, second"));
+    }
+
     @Test
     public void shouldFilterNullSecrets() throws Exception {
         List<String> secrets = Arrays.asList("secret", null, "another", null, "last");
@@ -0,0 +1,115 @@
+package com.datapipe.jenkins.vault.log;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+
+public class MaskingOutputStreamSpec {
+
+    /** Few characters, so secrets overlap and repeat often; two of them take several bytes in UTF-8. */
+    private static final String ALPHABET = "abcä€\n";
+
+    private static String randomString(Random random, int minLength, int maxLength) {
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder b = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            b.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return b.toString();
+    }
+
+    private static String maskWithPattern(List<String> secrets, String input) {
+        return Pattern.compile(MaskingConsoleLogFilter.getPatternStringForSecrets(secrets)).matcher(input).replaceAll("****");
+    }
+
+    @Test
+    public void shouldHoldBackPartialSecretOnFlush() throws Exception {
+        MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(), Arrays.asList("secret"));
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        MaskingOutputStream out = new MaskingOutputStream(log, filter);
+
+        out.write("a sec".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        assertThat(log.toString(StandardCharsets.UTF_8.name()), is("a "));
+        assertThat(out.getPendingLength(), is(3));
+
+        out.write("ret and a sec".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        assertThat(log.toString(StandardCharsets.UTF_8.name()), is("a **** and a "));
+
+        out.write("tion".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertThat(log.toString(StandardCharsets.UTF_8.name()), is("a **** and a section"));
+    }
+
+    @Test
+    public void shouldMaskSecretSplitIntoSingleBytes() throws Exception {
+        MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(), Arrays.asList("pässwörd"));
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        MaskingOutputStream out = new MaskingOutputStream(log, filter);
+
+        for (byte b : "the pässwörd!".getBytes(StandardCharsets.UTF_8)) {
+            out.write(b);
+            out.flush();
+        }
+        out.close();
+
+        assertThat(log.toString(StandardCharsets.UTF_8.name()), is("the ****!"));
+    }
+
+    @Test
+    public void shouldMaskLikePatternForRandomWritesAndFlushes() throws Exception {
+        Random random = new Random(6L);
+        for (int run = 0; run < 5000; run++) {
+            List<String> secrets = new ArrayList<>();
+            int count = 1 + random.nextInt(4);
+            int maxLength = 0;
+            for (int i = 0; i < count; i++) {
+                String secret = randomString(random, 1, 6);
+                secrets.add(secret);
+                maxLength = Math.max(maxLength, secret.getBytes(StandardCharsets.UTF_8).length);
+            }
+            String text = randomString(random, 0, 60);
+            String expected = maskWithPattern(secrets, text);
+            String description = "secrets " + secrets + " in '" + text + "'";
+
+            MaskingConsoleLogFilter filter = new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(), secrets);
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            MaskingOutputStream out = new MaskingOutputStream(log, filter);
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            int off = 0;
+            while (off < bytes.length) {
+                // chunks may end in the middle of a secret and of a multi-byte character
+                int len = Math.min(bytes.length - off, 1 + random.nextInt(8));
+                if (len == 1 && random.nextBoolean()) {
+                    out.write(bytes[off]);
+                } else {
+                    out.write(bytes, off, len);
+                }
+                off += len;
+                if (random.nextInt(3) == 0) {
+                    out.flush();
+                    // whatever was written is final, and only what may still become a secret is held back
+                    assertThat(description, isPrefix(log.toByteArray(), expected.getBytes(StandardCharsets.UTF_8)), is(true));
+                    assertThat(description, out.getPendingLength(), lessThanOrEqualTo(maxLength));
+                }
+            }
+            out.close();
+            assertThat(description, log.toString(StandardCharsets.UTF_8.name()), is(expected));
+        }
+    }
+
+    private static boolean isPrefix(byte[] prefix, byte[] bytes) {
+        return prefix.length <= bytes.length && Arrays.equals(prefix, Arrays.copyOf(bytes, prefix.length));
+    }
+}
@@ -0,0 +1,98 @@
+package com.datapipe.jenkins.vault.log;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class SecretMatcherSpec {
+
+    /** Few characters, so secrets overlap and repeat often; two of them take several bytes in UTF-8. */
+    private static final String ALPHABET = "abcä€ ";
+
+    /**
+     * Masks the input the way a build log is masked, in a single write.
+     */
+    private static String mask(List<String> secrets, String input) throws IOException {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        MaskingOutputStream out = new MaskingOutputStream(log, new MaskingConsoleLogFilter(StandardCharsets.UTF_8.name(), secrets));
+        out.write(input.getBytes(StandardCharsets.UTF_8));
+        out.close();
+        return log.toString(StandardCharsets.UTF_8.name());
+    }
+
+    private static String maskWithPattern(List<String> secrets, String input) {
+        String pattern = MaskingConsoleLogFilter.getPatternStringForSecrets(secrets);
+        return pattern.isEmpty() ? input : Pattern.compile(pattern).matcher(input).replaceAll("****");
+    }
+
+    private static void assertSameAsPattern(List<String> secrets, String input) throws IOException {
+        assertThat(mask(secrets, input), is(maskWithPattern(secrets, input)));
+    }
+
+    @Test
+    public void shouldLeaveInputWithoutSecretsAlone() throws Exception {
+        assertThat(mask(Arrays.asList("secret"), "This is a test."), is("This is a test."));
+    }
+
+    @Test
+    public void shouldPreferLongestSecret() throws Exception {
+        assertThat(mask(Arrays.asList("secret", "secretive"), "so secretive"), is("so ****"));
+        assertSameAsPattern(Arrays.asList("secret", "secretive"), "so secretive");
+    }
+
+    @Test
+    public void shouldPreferLeftmostSecret() throws Exception {
+        assertThat(mask(Arrays.asList("ab", "bcd", "cd"), "abcd"), is("********"));
+        assertSameAsPattern(Arrays.asList("ab", "bcd", "cd"), "abcd");
+        assertSameAsPattern(Arrays.asList("abcd", "bc"), "xabcx abcd");
+    }
+
+    @Test
+    public void shouldMaskMultiByteSecrets() throws Exception {
+        assertSameAsPattern(Arrays.asList("pässwörd"), "the pässwörd is pässwörd");
+    }
+
+    @Test
+    public void shouldIgnoreNullAndEmptySecrets() throws Exception {
+        assertThat(mask(Arrays.asList(null, "", "secret"), "a secret"), is("a ****"));
+        assertThat(mask(Collections.<String>emptyList(), "a secret"), is("a secret"));
+    }
+
+    private static String randomString(Random random, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder b = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            b.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void shouldMaskLikePatternForRandomInputs() throws Exception {
+        Random random = new Random(5L);
+        for (int set = 0; set < 2000; set++) {
+            List<String> secrets = new ArrayList<>();
+            int count = 1 + random.nextInt(6);
+            for (int i = 0; i < count; i++) {
+                secrets.add(randomString(random, 5));
+            }
+            Pattern pattern = Pattern.compile(MaskingConsoleLogFilter.getPatternStringForSecrets(secrets));
+            for (int input = 0; input < 100; input++) {
+                String text = randomString(random, 40);
+                String expected = pattern.pattern().isEmpty() ? text : pattern.matcher(text).replaceAll("****");
+                assertThat("secrets " + secrets + " in '" + text + "'", mask(secrets, text), is(expected));
+            }
+        }
+    }
+}
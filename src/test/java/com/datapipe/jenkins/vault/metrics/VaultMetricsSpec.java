@@ -0,0 +1,60 @@
+package com.datapipe.jenkins.vault.metrics;
+
+import org.junit.Test;
+
+import java.util.SortedMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class VaultMetricsSpec {
+
+    @Test
+    public void shouldReportPercentilesAsBucketBounds() {
+        VaultMetrics.Histogram histogram = new VaultMetrics.Histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(150);
+        }
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.percentile(0.5), is(5L));
+        assertThat(histogram.percentile(0.95), is(150L));
+    }
+
+    @Test
+    public void shouldReportCacheHitRatio() {
+        VaultMetrics metrics = new VaultMetrics();
+        metrics.recordCacheLookup("vault.cache.test", true);
+        metrics.recordCacheLookup("vault.cache.test", true);
+        metrics.recordCacheLookup("vault.cache.test", true);
+        metrics.recordCacheLookup("vault.cache.test", false);
+
+        SortedMap<String, Double> snapshot = metrics.snapshot();
+
+        assertThat(snapshot.get("vault.cache.test.hit"), is(3.0));
+        assertThat(snapshot.get("vault.cache.test.hitRatio"), is(0.75));
+        assertThat(metrics.value("vault.cache.test.hitRatio"), is(0.75));
+    }
+
+    @Test
+    public void shouldExpandHistogramsInSnapshot() {
+        VaultMetrics metrics = new VaultMetrics();
+        metrics.histogram("vault.read").record(12);
+
+        SortedMap<String, Double> snapshot = metrics.snapshot();
+
+        assertThat(snapshot.get("vault.read.count"), is(1.0));
+        assertThat(snapshot.get("vault.read.max"), is(12.0));
+        assertThat(metrics.value("vault.read.p99"), is(12.0));
+    }
+
+    @Test
+    public void shouldDeriveMountFromPath() {
+        assertThat(VaultMetrics.mountOf("secret/team/app"), is("secret"));
+        assertThat(VaultMetrics.mountOf("/database/creds/role"), is("database"));
+        assertThat(VaultMetrics.mountOf("cubbyhole"), is("cubbyhole"));
+    }
+}